@@ -1,17 +1,79 @@
 package net.cafox.navigation;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.view.View.MeasureSpec;
 import android.view.ViewGroup;
 
+/**
+ * A {@link SceneProvider} which allocates scenes on demand. Sub-classes create scenes in {@link #getScene(int)}, shown
+ * scenes are added to the container and hidden scenes are removed from it.
+ * <p>
+ * When constructed with a {@link ScenePool}, hidden {@link RecyclableScene}s which are no longer in the back stack are
+ * recycled into the pool instead of being released, and {@link #getRecycledScene(int)} hands them out again so that
+ * <code>getScene(int)</code> can skip inflation. A reused view keeps its measured size, so it is not measured again
+ * when the size of the container has not changed since it was last shown.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
 public abstract class AllocateSceneProvider<S extends Scene> implements SceneProvider<S>
 {
 	private ViewGroup container;
+	private SceneManager<S> sceneManager;
+	private ScenePool<S> scenePool;
 
 	public AllocateSceneProvider(ViewGroup container)
 	{
 		this.container = container;
 	}
 
+	/**
+	 * Construct an allocate scene provider which recycles scenes into the given pool.
+	 * @param container The view group container of all scenes.
+	 * @param sceneManager The scene navigator this provider works with. Scenes in its back stack are never recycled.
+	 * @param scenePool The pool which receives hidden scenes.
+	 */
+	public AllocateSceneProvider(@NonNull ViewGroup container, @NonNull SceneManager<S> sceneManager, @NonNull ScenePool<S> scenePool)
+	{
+		this.container = container;
+		this.sceneManager = sceneManager;
+		this.scenePool = scenePool;
+	}
+
+	/**
+	 * Take a recycled scene with the given scene id out of the scene pool. Sub-classes call this in
+	 * {@link #getScene(int)} before creating a new scene.
+	 * @param sceneId The scene id.
+	 * @return A recycled scene, or <code>null</code> if there is none or this provider has no scene pool.
+	 */
+	protected final @Nullable S getRecycledScene(int sceneId)
+	{
+		return scenePool == null ? null : scenePool.getRecycledScene(sceneId);
+	}
+
+	/**
+	 * Measure the view of the given scene against the current size of the container, as if it were a child of the
+	 * container. This is meant to be called before the scene is shown, for example in
+	 * {@link SceneNavigator.AsyncSceneHandler#onScenePrepared(Scene)}, so that the first layout pass after showing it
+	 * does not measure it again. Nothing happens if the container has not been laid out.
+	 * @param scene The scene to measure.
+	 */
+	public void measureScene(@NonNull S scene)
+	{
+		final int width = container.getWidth();
+		final int height = container.getHeight();
+		if(width == 0 && height == 0) return;
+
+		final View view = scene.getView();
+		ViewGroup.LayoutParams lp = view.getLayoutParams();
+		if(lp == null) lp = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+		final int widthMeasureSpec = ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+				container.getPaddingLeft() + container.getPaddingRight(), lp.width);
+		final int heightMeasureSpec = ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY),
+				container.getPaddingTop() + container.getPaddingBottom(), lp.height);
+		view.measure(widthMeasureSpec, heightMeasureSpec);
+	}
+
 	@Override
 	public void showScene(@NonNull S scene)
 	{
@@ -22,5 +84,6 @@ public abstract class AllocateSceneProvider<S extends Scene> implements ScenePro
 	public void hideScene(@NonNull S scene)
 	{
 		container.removeView(scene.getView());
+		if(scenePool != null && !sceneManager.isInSceneStack(scene)) scenePool.putRecycledScene(scene);
 	}
 }
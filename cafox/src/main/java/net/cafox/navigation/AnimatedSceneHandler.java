@@ -0,0 +1,121 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * An animated {@link SceneNavigator.SceneHandler} which slides, pushes or fades scenes during go-to and back transitions,
+ * and fades them during replace transitions. Default scenes and resets are not animated. The incoming and outgoing
+ * scenes are rendered in hardware layers while a transition is running and their layer types are restored afterwards,
+ * so scenes do not hold layer memory while idle. Transitions use {@link net.cafox.interpolator.IOSInterpolator} and
+ * navigation is locked while a transition is running.
+ * <p>
+ * The frame times of every transition can be received through {@link #setFrameTimeListener(FrameTimeReport.Listener)}.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public class AnimatedSceneHandler<S extends Scene> implements SceneNavigator.SceneHandler<S>
+{
+	/**
+	 * The incoming scene slides over the outgoing scene, which moves slightly in the opposite direction. Going back,
+	 * the outgoing scene slides away. Scenes are drawn in the order of the container, so the outgoing scene may be
+	 * covered when going back if it is drawn first.
+	 */
+	public final static int STYLE_SLIDE = 0;
+
+	/**
+	 * The incoming scene pushes the outgoing scene out of the container.
+	 */
+	public final static int STYLE_PUSH = 1;
+
+	/**
+	 * The incoming scene fades in while the outgoing scene fades out.
+	 */
+	public final static int STYLE_FADE = 2;
+
+	private final SceneProvider<S> sceneProvider;
+	private final SceneTransitionAnimator animator;
+	private final int style;
+	private S hideScene;
+
+	/**
+	 * Construct an animated scene handler.
+	 * @param sceneProvider The scene provider.
+	 * @param sceneManager The navigator this handler works with. It is locked while a transition is running.
+	 * @param style The style of go-to and back transitions, one of {@link #STYLE_SLIDE}, {@link #STYLE_PUSH} and
+	 *              {@link #STYLE_FADE}.
+	 */
+	public AnimatedSceneHandler(@NonNull final SceneProvider<S> sceneProvider, @NonNull SceneManager<S> sceneManager, int style)
+	{
+		if(style < STYLE_SLIDE || style > STYLE_FADE) throw new IllegalArgumentException("invalid style " + style);
+		this.sceneProvider = sceneProvider;
+		this.style = style;
+		this.animator = new SceneTransitionAnimator(sceneManager, new SceneTransitionAnimator.Callback()
+		{
+			@Override
+			public void onTransitionEnd()
+			{
+				sceneProvider.hideScene(hideScene);
+				hideScene = null;
+			}
+		});
+	}
+
+	/**
+	 * Set the duration of transitions. Default is 350 milliseconds.
+	 * @param duration The duration in milliseconds.
+	 */
+	final public void setDuration(long duration) { animator.setDuration(duration); }
+
+	/**
+	 * Set the listener which receives the frame times of every transition.
+	 * @param listener The listener, or <code>null</code> to remove the listener.
+	 */
+	final public void setFrameTimeListener(@Nullable FrameTimeReport.Listener listener) { animator.setFrameTimeListener(listener); }
+
+	@Override
+	public @NonNull S getScene(int sceneId) { return sceneProvider.getScene(sceneId); }
+
+	@Override
+	public void onShowDefaultScene(S defaultScene)
+	{
+		sceneProvider.showScene(defaultScene);
+	}
+
+	@Override
+	public void onResetHide(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene, int hideSceneCount)
+	{
+		sceneProvider.hideScene(hideScene);
+	}
+
+	@Override
+	public void onResetShow(int showStackIndex, @NonNull S showScene, int hideSceneCount)
+	{
+		sceneProvider.showScene(showScene);
+	}
+
+	@Override
+	public void onReplace(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		startTransition(showScene, hideScene, STYLE_FADE, true);
+	}
+
+	@Override
+	public void onGoTo(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		startTransition(showScene, hideScene, style, true);
+	}
+
+	@Override
+	public void onBack(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		startTransition(showScene, hideScene, style, false);
+	}
+
+	private void startTransition(S showScene, S hideScene, int style, boolean isForward)
+	{
+		sceneProvider.showScene(showScene);
+		if(showScene == hideScene) return;
+		this.hideScene = hideScene;
+		animator.start(showScene.getView(), hideScene.getView(), style, isForward);
+	}
+}
@@ -0,0 +1,96 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * An animated {@link TaskNavigator.TaskHandler} which slides, pushes or fades tasks during next and previous
+ * transitions. See {@link AnimatedSceneHandler} for how transitions are rendered.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public class AnimatedTaskHandler<S extends Scene> implements TaskNavigator.PrefetchTaskHandler<S>
+{
+	private final SceneProvider<S> sceneProvider;
+	private final SceneTransitionAnimator animator;
+	private final int style;
+	private S hideTask;
+
+	/**
+	 * Construct an animated task handler.
+	 * @param sceneProvider The scene provider.
+	 * @param sceneManager The navigator this handler works with. It is locked while a transition is running.
+	 * @param style The style of transitions, one of {@link AnimatedSceneHandler#STYLE_SLIDE},
+	 *              {@link AnimatedSceneHandler#STYLE_PUSH} and {@link AnimatedSceneHandler#STYLE_FADE}.
+	 */
+	public AnimatedTaskHandler(@NonNull final SceneProvider<S> sceneProvider, @NonNull SceneManager<S> sceneManager, int style)
+	{
+		if(style < AnimatedSceneHandler.STYLE_SLIDE || style > AnimatedSceneHandler.STYLE_FADE) throw new IllegalArgumentException("invalid style " + style);
+		this.sceneProvider = sceneProvider;
+		this.style = style;
+		this.animator = new SceneTransitionAnimator(sceneManager, new SceneTransitionAnimator.Callback()
+		{
+			@Override
+			public void onTransitionEnd()
+			{
+				sceneProvider.hideScene(hideTask);
+				hideTask = null;
+			}
+		});
+	}
+
+	/**
+	 * Set the duration of transitions. Default is 350 milliseconds.
+	 * @param duration The duration in milliseconds.
+	 */
+	final public void setDuration(long duration) { animator.setDuration(duration); }
+
+	/**
+	 * Set the listener which receives the frame times of every transition.
+	 * @param listener The listener, or <code>null</code> to remove the listener.
+	 */
+	final public void setFrameTimeListener(@Nullable FrameTimeReport.Listener listener) { animator.setFrameTimeListener(listener); }
+
+	@Override
+	public @NonNull S getTask(int taskIndex) { return sceneProvider.getScene(taskIndex); }
+
+	@Override
+	public int getTaskCount() { return sceneProvider.getSceneCount(); }
+
+	@Override
+	public void onShowDefaultTask(@NonNull S defaultTask)
+	{
+		sceneProvider.showScene(defaultTask);
+	}
+
+	@Override
+	public void onNext(int showTaskIndex, @NonNull S showTask, int hideTaskIndex, @NonNull S hideTask)
+	{
+		startTransition(showTask, hideTask, true);
+	}
+
+	@Override
+	public void onPrevious(int showTaskIndex, @NonNull S showTask, int hideTaskIndex, @NonNull S hideTask)
+	{
+		startTransition(showTask, hideTask, false);
+	}
+
+	@Override
+	public void onTaskPrefetched(int taskIndex, @NonNull S task)
+	{
+		if(sceneProvider instanceof AllocateSceneProvider) ((AllocateSceneProvider<S>) sceneProvider).measureScene(task);
+	}
+
+	@Override
+	public void onPrefetchedTaskReleased(int taskIndex, @NonNull S task)
+	{
+		sceneProvider.hideScene(task);
+	}
+
+	private void startTransition(S showTask, S hideTask, boolean isForward)
+	{
+		sceneProvider.showScene(showTask);
+		if(showTask == hideTask) return;
+		this.hideTask = hideTask;
+		animator.start(showTask.getView(), hideTask.getView(), style, isForward);
+	}
+}
@@ -1,5 +1,7 @@
 package net.cafox.navigation;
 
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.NonNull;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,12 +11,28 @@ import android.view.ViewGroup;
  * can be reduced to minimum. Developers no longer implements {@link #getScene(int)} in its sub-class, but supplies an array
  * of {@link Scene} through {@link #CachedSceneProvider(ViewGroup, S[])}. It is the responsibility of developers to make sure
  * that the array index of a scene matches its scene id.
+ * <p>
+ * By default hidden scenes are merely invisible, so they are still measured and laid out whenever the container is.
+ * When constructed with a {@link SceneContainer} through {@link #CachedSceneProvider(SceneContainer, S[], boolean)},
+ * hidden scenes can instead be detached from layout passes, which keeps the cost of a layout pass independent of the
+ * number of cached scenes.
+ * <p>
+ * Alternatively, scenes can be constructed lazily by a {@link SceneFactory} supplied through
+ * {@link #CachedSceneProvider(ViewGroup, int, SceneFactory)}. A scene is then created and added to the container the
+ * first time {@link #getScene(int)} asks for it, and {@link #prebuildScenesOnIdle(int...)} can be used to create
+ * scenes ahead of time while the main thread is idle.
  * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
  */
 @SuppressWarnings("ForLoopReplaceableByForEach")
 public class CachedSceneProvider<S extends Scene> implements SceneProvider<S>
 {
 	private S[] scenes;
+	private ViewGroup container;
+	private SceneContainer detachingContainer;
+	private SceneFactory<S> sceneFactory;
+	private MessageQueue.IdleHandler prebuildIdleHandler;
+	private int[] prebuildSceneIds;
+	private int prebuildPosition;
 
 	/**
 	 * Construct a cached scene provider. The view group container is where all scenes will reside. All views of scenes
@@ -25,31 +43,188 @@ public class CachedSceneProvider<S extends Scene> implements SceneProvider<S>
 	 * @param scenes The array of scenes. Make sure the array index of each scene matches its scene id.
 	 */
 	public CachedSceneProvider(@NonNull ViewGroup container, @NonNull S[] scenes)
+	{
+		this(container, scenes, null);
+	}
+
+	/**
+	 * Construct a cached scene provider which may detach hidden scenes from layout passes. See
+	 * {@link #CachedSceneProvider(ViewGroup, S[])} for how scenes are added to the container.
+	 * @param container The scene container of all scenes.
+	 * @param scenes The array of scenes. Make sure the array index of each scene matches its scene id.
+	 * @param isDetachingHiddenScenes Passing <code>true</code> detaches hidden scenes from layout passes by
+	 *                                {@link SceneContainer#detachFromLayout(View)}, <code>false</code> only makes them
+	 *                                invisible.
+	 */
+	public CachedSceneProvider(@NonNull SceneContainer container, @NonNull S[] scenes, boolean isDetachingHiddenScenes)
+	{
+		this(container, scenes, isDetachingHiddenScenes ? container : null);
+	}
+
+	private CachedSceneProvider(ViewGroup container, S[] scenes, SceneContainer detachingContainer)
 	{
 		this.scenes = scenes;
+		this.container = container;
+		this.detachingContainer = detachingContainer;
 
 		final int sceneCount = scenes.length;
 		for(int i = 0; i < sceneCount; ++i)
 		{
 			final S scene = scenes[i];
 			if(scene == null) throw new IllegalArgumentException("scenes cannot contain null element");
-			if(scene.getSceneId() != i)
-			{
-				throw new IllegalStateException("scene id " + scene.getSceneId()
-						+ " of the scene " + scene.getClass().getSimpleName() +" is not the same as its index " + i
-						+ " in scenes");
-			}
+			addScene(scene, i);
+		}
+	}
 
-			final View view = scene.getView();
-			view.setVisibility(View.INVISIBLE);
-			container.addView(view);
+	/**
+	 * Construct a cached scene provider which creates scenes lazily. A scene is created by the given factory and added
+	 * to the container the first time it is asked for by {@link #getScene(int)}, so views of scenes are added to the
+	 * container in the order they are first asked for. Please note that this provider makes no attempts to guarantee
+	 * that the container has no other views.
+	 * @param container The view group container of all scenes.
+	 * @param sceneCount The number of scenes. Valid scene ids range from <code>0</code> to <code>sceneCount - 1</code>.
+	 * @param sceneFactory The factory which creates scenes.
+	 */
+	public CachedSceneProvider(@NonNull ViewGroup container, int sceneCount, @NonNull SceneFactory<S> sceneFactory)
+	{
+		this(container, sceneCount, sceneFactory, null);
+	}
+
+	/**
+	 * Construct a cached scene provider which creates scenes lazily and may detach hidden scenes from layout passes. See
+	 * {@link #CachedSceneProvider(ViewGroup, int, SceneFactory)} for how scenes are created.
+	 * @param container The scene container of all scenes.
+	 * @param sceneCount The number of scenes. Valid scene ids range from <code>0</code> to <code>sceneCount - 1</code>.
+	 * @param sceneFactory The factory which creates scenes.
+	 * @param isDetachingHiddenScenes Passing <code>true</code> detaches hidden scenes from layout passes by
+	 *                                {@link SceneContainer#detachFromLayout(View)}, <code>false</code> only makes them
+	 *                                invisible.
+	 */
+	public CachedSceneProvider(@NonNull SceneContainer container, int sceneCount, @NonNull SceneFactory<S> sceneFactory,
+							   boolean isDetachingHiddenScenes)
+	{
+		this(container, sceneCount, sceneFactory, isDetachingHiddenScenes ? container : null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private CachedSceneProvider(ViewGroup container, int sceneCount, SceneFactory<S> sceneFactory,
+								SceneContainer detachingContainer)
+	{
+		if(sceneCount < 0) throw new IllegalArgumentException("sceneCount cannot be negative");
+		this.scenes = (S[]) new Scene[sceneCount];
+		this.container = container;
+		this.detachingContainer = detachingContainer;
+		this.sceneFactory = sceneFactory;
+	}
+
+	/**
+	 * Validate the scene against its index and add its view to the container as a hidden scene.
+	 */
+	private void addScene(S scene, int index)
+	{
+		if(scene.getSceneId() != index)
+		{
+			throw new IllegalStateException("scene id " + scene.getSceneId()
+					+ " of the scene " + scene.getClass().getSimpleName() +" is not the same as its index " + index
+					+ " in scenes");
 		}
+
+		final View view = scene.getView();
+		view.setVisibility(View.INVISIBLE);
+		container.addView(view);
+		if(detachingContainer != null) detachingContainer.detachFromLayout(view);
 	}
 
 	@Override
 	final public @NonNull S getScene(int sceneId)
 	{
-		return scenes[sceneId];
+		S scene = scenes[sceneId];
+		if(scene == null)
+		{
+			// Only lazily constructed providers can have null scenes.
+			scene = sceneFactory.createScene(sceneId);
+			addScene(scene, sceneId);
+			scenes[sceneId] = scene;
+		}
+		return scene;
+	}
+
+	/**
+	 * Check whether the scene with the given scene id has been created. This is always <code>true</code> for providers
+	 * constructed with an array of scenes.
+	 * @param sceneId The scene id of the scene.
+	 * @return <code>true</code> if the scene has been created, <code>false</code> otherwise.
+	 */
+	final public boolean isSceneCreated(int sceneId) { return scenes[sceneId] != null; }
+
+	/**
+	 * Create the scenes with the given scene ids, one scene each time the main thread becomes idle, so that the first
+	 * navigation to them does not have to create them. Scenes which have been created are skipped. Calling this method
+	 * again replaces the scenes to create. This must be called on the main thread.
+	 * @param sceneIds The scene ids of the scenes to create, in the order they should be created. Passing no scene id
+	 *                 cancels pending creation.
+	 */
+	final public void prebuildScenesOnIdle(@NonNull int... sceneIds)
+	{
+		for(int sceneId : sceneIds)
+		{
+			if(sceneId < 0 || sceneId >= scenes.length) throw new IllegalArgumentException("invalid scene id " + sceneId);
+		}
+
+		prebuildSceneIds = sceneIds;
+		prebuildPosition = 0;
+		if(prebuildIdleHandler != null || sceneIds.length == 0) return;
+
+		prebuildIdleHandler = new MessageQueue.IdleHandler()
+		{
+			@Override
+			public boolean queueIdle()
+			{
+				// Create at most one scene per idle callback so that a pending frame is never delayed by more than one scene.
+				while(prebuildPosition < prebuildSceneIds.length)
+				{
+					final int sceneId = prebuildSceneIds[prebuildPosition++];
+					if(scenes[sceneId] == null)
+					{
+						getScene(sceneId);
+						break;
+					}
+				}
+
+				final boolean isKept = prebuildPosition < prebuildSceneIds.length;
+				if(!isKept) prebuildIdleHandler = null;
+				return isKept;
+			}
+		};
+		Looper.myQueue().addIdleHandler(prebuildIdleHandler);
+	}
+
+	/**
+	 * Create all scenes that have not been created, in the order of their scene ids, while the main thread is idle.
+	 * See {@link #prebuildScenesOnIdle(int...)}.
+	 */
+	final public void prebuildAllScenesOnIdle()
+	{
+		final int sceneCount = scenes.length;
+		final int[] sceneIds = new int[sceneCount];
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			sceneIds[i] = i;
+		}
+		prebuildScenesOnIdle(sceneIds);
+	}
+
+	/**
+	 * Call {@link TrimmableScene#onTrimMemory(int)} of all created trimmable scenes. Cached scenes are never released,
+	 * so this is the only way {@link SceneTrimmer} can reclaim their memory.
+	 * @param level The trim level.
+	 */
+	final void dispatchTrimMemory(int level)
+	{
+		for(int i = 0; i < scenes.length; ++i)
+		{
+			if(scenes[i] instanceof TrimmableScene) ((TrimmableScene) scenes[i]).onTrimMemory(level);
+		}
 	}
 
 	@Override
@@ -58,12 +233,14 @@ public class CachedSceneProvider<S extends Scene> implements SceneProvider<S>
 	@Override
 	public void showScene(@NonNull S scene)
 	{
-		scene.getView().setVisibility(View.VISIBLE);
+		if(detachingContainer != null) detachingContainer.attachToLayout(scene.getView());
+		else scene.getView().setVisibility(View.VISIBLE);
 	}
 
 	@Override
 	public void hideScene(@NonNull S scene)
 	{
-		scene.getView().setVisibility(View.INVISIBLE);
+		if(detachingContainer != null) detachingContainer.detachFromLayout(scene.getView());
+		else scene.getView().setVisibility(View.INVISIBLE);
 	}
 }
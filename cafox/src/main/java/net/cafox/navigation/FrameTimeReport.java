@@ -0,0 +1,86 @@
+package net.cafox.navigation;
+
+/**
+ * A report of frame times during an animated transition or gesture. A frame is dropped when its interval is longer
+ * than one and a half frame intervals at 60fps. A report is reused by whatever produces it, so listeners should copy
+ * out what they need instead of keeping the report.
+ */
+public class FrameTimeReport
+{
+	/**
+	 * A listener which receives a report when an animated transition or gesture ends.
+	 */
+	public interface Listener
+	{
+		/**
+		 * @param report The frame time report. It is only valid during this call.
+		 */
+		void onFrameTimeReport(FrameTimeReport report);
+	}
+
+	public final static long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+	private final static long DROPPED_FRAME_INTERVAL_NANOS = FRAME_INTERVAL_NANOS * 3 / 2;
+
+	private long lastFrameNanos;
+	private int frameCount;
+	private int droppedFrameCount;
+	private long maxFrameNanos;
+	private long totalNanos;
+
+	/**
+	 * Start a new report.
+	 */
+	final void begin()
+	{
+		lastFrameNanos = System.nanoTime();
+		frameCount = 0;
+		droppedFrameCount = 0;
+		maxFrameNanos = 0;
+		totalNanos = 0;
+	}
+
+	/**
+	 * Record a frame at the current time.
+	 */
+	final void onFrame() { onFrame(System.nanoTime()); }
+
+	/**
+	 * Record a frame at the given time.
+	 * @param nowNanos The time of the frame, in the {@link System#nanoTime()} time base.
+	 */
+	final void onFrame(long nowNanos)
+	{
+		final long frameNanos = nowNanos - lastFrameNanos;
+		lastFrameNanos = nowNanos;
+		++frameCount;
+		totalNanos += frameNanos;
+		maxFrameNanos = Math.max(maxFrameNanos, frameNanos);
+		if(frameNanos > DROPPED_FRAME_INTERVAL_NANOS) droppedFrameCount += (int) (frameNanos / FRAME_INTERVAL_NANOS) - 1;
+	}
+
+	/**
+	 * @return The number of frames.
+	 */
+	final public int getFrameCount() { return frameCount; }
+
+	/**
+	 * @return The estimated number of frames dropped, i.e. the number of 60fps frame intervals missed.
+	 */
+	final public int getDroppedFrameCount() { return droppedFrameCount; }
+
+	/**
+	 * @return The longest frame interval, in nanoseconds.
+	 */
+	final public long getMaxFrameNanos() { return maxFrameNanos; }
+
+	/**
+	 * @return The total time of all frames, in nanoseconds.
+	 */
+	final public long getTotalNanos() { return totalNanos; }
+
+	/**
+	 * @return The average frame rate, or <code>0</code> if there is no frame.
+	 */
+	final public float getAverageFps() { return totalNanos == 0 ? 0 : frameCount * 1e9f / totalNanos; }
+}
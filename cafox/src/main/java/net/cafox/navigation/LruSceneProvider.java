@@ -0,0 +1,228 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link SceneProvider} which sits between {@link AllocateSceneProvider} and {@link CachedSceneProvider}. Scenes are
+ * created on demand through {@link #createScene(int)} and cached the same way <code>CachedSceneProvider</code> does,
+ * but only the most recently used scenes are kept. When the total size of cached scenes exceeds the maximum size,
+ * the least recently used scenes are evicted, i.e. their views are removed from the container and the scenes are
+ * released.
+ * <p>
+ * By default the size of each scene is <code>1</code>, so the maximum size is the maximum number of cached scenes.
+ * Override {@link #sizeOf(Scene)} to budget by other units, for example bytes estimated by
+ * {@link SceneFootprint#estimateBitmapBytes(View)}.
+ * <p>
+ * Scenes in the back stack of the given {@link SceneManager} are never evicted, since they are still reachable by going
+ * back. The total size can hence exceed the maximum size when the back stack is deep. Hit, miss and eviction counts are
+ * recorded so that the maximum size can be tuned.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public abstract class LruSceneProvider<S extends Scene> implements SceneProvider<S>
+{
+	private final ViewGroup container;
+	private final SceneManager<S> sceneManager;
+
+	/**
+	 * Cached scenes keyed by scene id, iterated from the least recently used to the most recently used.
+	 */
+	private final LinkedHashMap<Integer, S> scenes = new LinkedHashMap<>(16, 0.75f, true);
+	private final SparseIntArray sceneSizes = new SparseIntArray();
+
+	/**
+	 * The scene returned by {@link #getScene(int)} but not shown yet. It is not in the back stack until it is shown, and
+	 * the current scene is hidden before the next one is shown, so it must be excluded from trimming in between.
+	 */
+	private S pendingScene;
+
+	private int maxSize;
+	private int size;
+	private int hitCount;
+	private int missCount;
+	private int evictionCount;
+
+	/**
+	 * Construct a LRU scene provider.
+	 * @param container The view group container of all scenes.
+	 * @param sceneManager The scene navigator this provider works with. Scenes in its back stack are never evicted.
+	 * @param maxSize The maximum total size of cached scenes, as measured by {@link #sizeOf(Scene)}.
+	 */
+	public LruSceneProvider(@NonNull ViewGroup container, @NonNull SceneManager<S> sceneManager, int maxSize)
+	{
+		if(maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+		this.container = container;
+		this.sceneManager = sceneManager;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Create a scene that matches the given scene id. This is called when the scene is not cached.
+	 * @param sceneId The scene id of the scene.
+	 * @return The newly created scene.
+	 */
+	protected abstract @NonNull S createScene(int sceneId);
+
+	/**
+	 * Get the size of the given scene in user-defined units. Default implementation returns <code>1</code>. The size
+	 * of a scene is re-evaluated every time it is hidden, so sizes that grow after showing, such as that of loaded
+	 * bitmaps, are taken into account.
+	 * @param scene The scene.
+	 * @return The size of the scene. Must not be negative.
+	 */
+	protected int sizeOf(@NonNull S scene) { return 1; }
+
+	/**
+	 * Called after a scene is evicted and its view removed from the container. Sub-classes can release resources here.
+	 * @param scene The evicted scene.
+	 */
+	protected void onSceneEvicted(@NonNull S scene) {}
+
+	@Override
+	final public @NonNull S getScene(int sceneId)
+	{
+		S scene = scenes.get(sceneId);
+		if(scene != null)
+		{
+			++hitCount;
+			pendingScene = scene;
+			return scene;
+		}
+
+		++missCount;
+		scene = createScene(sceneId);
+		if(scene.getSceneId() != sceneId)
+		{
+			throw new IllegalStateException("scene id " + scene.getSceneId()
+					+ " of the scene " + scene.getClass().getSimpleName() + " is not the same as the requested scene id "
+					+ sceneId);
+		}
+
+		final View view = scene.getView();
+		view.setVisibility(View.INVISIBLE);
+		container.addView(view);
+		scenes.put(sceneId, scene);
+		updateSize(scene);
+
+		// The requested scene is about to be shown, so never evict it here.
+		pendingScene = scene;
+		trimToSize(maxSize, scene, false);
+		return scene;
+	}
+
+	@Override
+	public void showScene(@NonNull S scene)
+	{
+		// Touch the scene so that it becomes the most recently used one.
+		scenes.get(scene.getSceneId());
+		if(scene == pendingScene) pendingScene = null;
+		scene.getView().setVisibility(View.VISIBLE);
+	}
+
+	@Override
+	public void hideScene(@NonNull S scene)
+	{
+		scene.getView().setVisibility(View.INVISIBLE);
+		if(scenes.get(scene.getSceneId()) != scene) return;
+		updateSize(scene);
+		trimToSize(maxSize, pendingScene, false);
+	}
+
+	/**
+	 * Evict the least recently used scenes until the total size is not larger than the given size, or until only
+	 * scenes in the back stack remain.
+	 * @param maxSize The maximum total size after trimming. Passing <code>0</code> evicts every scene not in the back
+	 *                stack.
+	 */
+	final public void trimToSize(int maxSize) { trimToSize(maxSize, null, false); }
+
+	/**
+	 * Evict every scene not in the back stack.
+	 */
+	final public void evictAll() { trimToSize(0, null, false); }
+
+	/**
+	 * Evict every scene not in the back stack for {@link SceneTrimmer}.
+	 * @return The estimated bitmap bytes of evicted scenes.
+	 */
+	final long trimAll() { return trimToSize(0, pendingScene, true); }
+
+	/**
+	 * @return The estimated bitmap bytes of evicted scenes if <code>isEstimatingBytes</code> is <code>true</code>,
+	 * <code>0</code> otherwise.
+	 */
+	private long trimToSize(int maxSize, S excludedScene, boolean isEstimatingBytes)
+	{
+		long evictedBytes = 0;
+		final Iterator<Map.Entry<Integer, S>> iterator = scenes.entrySet().iterator();
+		while(size > maxSize && iterator.hasNext())
+		{
+			final S scene = iterator.next().getValue();
+			if(scene == excludedScene || sceneManager.isInSceneStack(scene)) continue;
+
+			iterator.remove();
+			final int sceneId = scene.getSceneId();
+			size -= sceneSizes.get(sceneId);
+			sceneSizes.delete(sceneId);
+			if(isEstimatingBytes) evictedBytes += SceneFootprint.estimateBitmapBytes(scene.getView());
+			container.removeView(scene.getView());
+			++evictionCount;
+			onSceneEvicted(scene);
+		}
+		return evictedBytes;
+	}
+
+	private void updateSize(S scene)
+	{
+		final int sceneId = scene.getSceneId();
+		final int sceneSize = sizeOf(scene);
+		if(sceneSize < 0) throw new IllegalStateException("negative size " + sceneSize + " of scene " + sceneId);
+		size += sceneSize - sceneSizes.get(sceneId);
+		sceneSizes.put(sceneId, sceneSize);
+	}
+
+	/**
+	 * Set the maximum total size of cached scenes. Scenes are evicted immediately if the current total size exceeds
+	 * the new maximum size.
+	 * @param maxSize The maximum total size of cached scenes.
+	 */
+	final public void setMaxSize(int maxSize)
+	{
+		if(maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+		this.maxSize = maxSize;
+		trimToSize(maxSize, null, false);
+	}
+
+	final public int getMaxSize() { return maxSize; }
+
+	/**
+	 * @return The total size of cached scenes, as measured by {@link #sizeOf(Scene)}.
+	 */
+	final public int getSize() { return size; }
+
+	/**
+	 * @return The number of cached scenes.
+	 */
+	final public int getCachedSceneCount() { return scenes.size(); }
+
+	/**
+	 * @return The number of times {@link #getScene(int)} returned a cached scene.
+	 */
+	final public int getHitCount() { return hitCount; }
+
+	/**
+	 * @return The number of times {@link #getScene(int)} had to create a scene.
+	 */
+	final public int getMissCount() { return missCount; }
+
+	/**
+	 * @return The number of evicted scenes.
+	 */
+	final public int getEvictionCount() { return evictionCount; }
+}
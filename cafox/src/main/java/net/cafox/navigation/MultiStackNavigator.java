@@ -0,0 +1,280 @@
+package net.cafox.navigation;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A navigator with one back stack per tab, for example for bottom-tab apps. Each tab has its own
+ * {@link SceneNavigator}, obtained by {@link #getNavigator(int)}, and its own {@link SceneNavigator.SceneHandler},
+ * created by a {@link SceneHandlerFactory} for that navigator, while all tabs share one {@link SceneProvider}, so a
+ * scene is created once no matter how many tabs show it.
+ * <p>
+ * Only the current tab holds scenes. When switching away from a tab, the entries of its back stack release their
+ * scenes by {@link SceneManager#dematerializeScenes()}, keeping their scene ids, arguments and, for
+ * {@link StatefulScene}s, their states. When switching back, only the current scene of the tab is materialized again.
+ * A tab switch is therefore a single hide of one scene and a single show of another, and a scene instance can appear
+ * in the back stacks of several tabs.
+ * <p>
+ * Navigators of other tabs are locked, so commands issued to them are queued if they queue commands (see
+ * {@link SceneManager#setIsQueueingCommands(boolean)}) and replayed when their tab becomes current. Back stacks of
+ * rarely used tabs can be evicted by {@link #evictTabs(int)}, for example when memory is low, in which case those
+ * tabs start over from the default scenes of their back stacks.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public class MultiStackNavigator<S extends Scene>
+{
+	private final static String KEY_CURRENT_TAB = "net.cafox.navigation.MultiStackNavigator.currentTab";
+
+	private final static String KEY_TAB_STATES = "net.cafox.navigation.MultiStackNavigator.tabStates";
+
+	/**
+	 * Creates the scene handler of each tab. Scene handlers such as {@link AnimatedSceneHandler} and
+	 * {@link SwipeBackSceneHandler} work with one navigator, so every tab needs a handler of its own.
+	 * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+	 */
+	public interface SceneHandlerFactory<S extends Scene>
+	{
+		/**
+		 * Create the scene handler of the given tab. This is called once per tab during construction of the
+		 * multi-stack navigator.
+		 * @param tabIndex The tab index.
+		 * @param navigator The navigator of the tab, which is locked until the tab is shown.
+		 * @return The scene handler which handles navigation within the tab.
+		 */
+		@NonNull SceneNavigator.SceneHandler<S> createSceneHandler(int tabIndex, @NonNull SceneNavigator<S> navigator);
+	}
+
+	private final SceneProvider<S> sceneProvider;
+	private final SceneNavigator.SceneHandler<S>[] sceneHandlers;
+	private final int[] rootSceneIds;
+	private final SceneNavigator<S>[] navigators;
+	private final boolean[] isTabStarted;
+	private final long[] lastUsedTicks;
+	private long tick;
+	private Bundle[] pendingTabStates;
+	private int currentTab = -1;
+
+	/**
+	 * Construct a multi-stack navigator.
+	 * @param sceneProvider The scene provider shared by all tabs. It shows and hides scenes when switching tabs.
+	 * @param sceneHandlerFactory The factory which creates the scene handler of each tab for the navigator of the tab.
+	 * @param rootSceneIds The scene id of the default scene of each tab, in the order of tab indices.
+	 */
+	@SuppressWarnings("unchecked")
+	public MultiStackNavigator(@NonNull SceneProvider<S> sceneProvider, @NonNull SceneHandlerFactory<S> sceneHandlerFactory,
+							   @NonNull int... rootSceneIds)
+	{
+		if(rootSceneIds.length == 0) throw new IllegalArgumentException("rootSceneIds cannot be empty");
+		this.sceneProvider = sceneProvider;
+		this.rootSceneIds = rootSceneIds;
+
+		final int tabCount = rootSceneIds.length;
+		navigators = (SceneNavigator<S>[]) new SceneNavigator[tabCount];
+		sceneHandlers = (SceneNavigator.SceneHandler<S>[]) new SceneNavigator.SceneHandler[tabCount];
+		isTabStarted = new boolean[tabCount];
+		lastUsedTicks = new long[tabCount];
+		for(int i = 0; i < tabCount; ++i)
+		{
+			navigators[i] = new SceneNavigator<>();
+			navigators[i].setIsLocked(true);
+			sceneHandlers[i] = sceneHandlerFactory.createSceneHandler(i, navigators[i]);
+		}
+	}
+
+	/**
+	 * Show the given tab, or the tabs saved by {@link #saveState(Bundle)} if the given bundle contains them, in which
+	 * case the saved current tab is shown instead. Like {@link SceneNavigator#showDefaultScene(SceneNavigator.SceneHandler, int, Bundle)},
+	 * only the current scene of the current tab is created.
+	 * @param tabIndex The tab to show, used when the bundle does not contain saved tabs.
+	 * @param savedInstanceState The bundle which may contain saved tabs, typically the saved instance state of an
+	 *                           activity.
+	 */
+	final public void start(int tabIndex, @Nullable Bundle savedInstanceState)
+	{
+		if(currentTab >= 0) throw new IllegalStateException("attempt to start multi-stack navigator when it has already been started");
+
+		final Parcelable[] tabStates = savedInstanceState == null ? null : savedInstanceState.getParcelableArray(KEY_TAB_STATES);
+		if(tabStates != null && tabStates.length == navigators.length)
+		{
+			pendingTabStates = new Bundle[tabStates.length];
+			for(int i = 0; i < tabStates.length; ++i)
+			{
+				pendingTabStates[i] = (Bundle) tabStates[i];
+			}
+			tabIndex = savedInstanceState.getInt(KEY_CURRENT_TAB, tabIndex);
+		}
+
+		checkTabIndex(tabIndex);
+		currentTab = tabIndex;
+		startTab(tabIndex);
+		navigators[tabIndex].setIsLocked(false);
+	}
+
+	private void startTab(int tabIndex)
+	{
+		final SceneNavigator<S> navigator = navigators[tabIndex];
+		final Bundle tabState = pendingTabStates == null ? null : pendingTabStates[tabIndex];
+		if(tabState != null) pendingTabStates[tabIndex] = null;
+		isTabStarted[tabIndex] = true;
+		lastUsedTicks[tabIndex] = ++tick;
+		// Navigation stays locked while the default scene is shown, so queued commands are replayed only afterwards.
+		navigator.showDefaultScene(sceneHandlers[tabIndex], rootSceneIds[tabIndex], tabState);
+	}
+
+	/**
+	 * Switch to the given tab. The current scene of the current tab is hidden by {@link Scene#onHide()} and
+	 * {@link SceneProvider#hideScene(Scene)}, then the current scene of the given tab is shown by
+	 * {@link Scene#onShow()} and {@link SceneProvider#showScene(Scene)}. A tab shown for the first time shows its
+	 * default scene through {@link SceneNavigator.SceneHandler#onShowDefaultScene(Scene)} instead. Commands queued
+	 * by the navigator of the given tab are replayed afterwards.
+	 * @param tabIndex The tab to switch to.
+	 * @return <code>true</code> if the tab is switched to or is already current, <code>false</code> if navigation of
+	 * the current tab is locked, for example by an animating scene handler.
+	 */
+	final public boolean switchTab(int tabIndex)
+	{
+		checkTabIndex(tabIndex);
+		if(currentTab < 0) throw new IllegalStateException("attempt to switch tab before starting, call start(int, Bundle) first");
+		if(tabIndex == currentTab) return true;
+
+		final SceneNavigator<S> currentNavigator = navigators[currentTab];
+		if(currentNavigator.isLocked()) return false;
+
+		final S hideScene = currentNavigator.getCurrentScene();
+		hideScene.onHide();
+		sceneProvider.hideScene(hideScene);
+		currentNavigator.setIsLocked(true);
+		currentNavigator.dematerializeScenes();
+
+		currentTab = tabIndex;
+		final SceneNavigator<S> navigator = navigators[tabIndex];
+		if(!isTabStarted[tabIndex])
+		{
+			startTab(tabIndex);
+			navigator.getCurrentScene().onShow();
+		}
+		else
+		{
+			lastUsedTicks[tabIndex] = ++tick;
+			final S showScene = navigator.getCurrentScene();
+			showScene.onShow();
+			sceneProvider.showScene(showScene);
+		}
+		navigator.setIsLocked(false);
+		return true;
+	}
+
+	/**
+	 * Evict the back stacks of the least recently used tabs other than the current one, so that each of them only keeps
+	 * its default entry and no saved state. Tabs which have not been shown since construction, or since they were last
+	 * evicted, are not counted.
+	 * @param keepTabCount The number of most recently used tabs whose back stacks are kept, including the current tab.
+	 * @return The number of evicted tabs.
+	 */
+	final public int evictTabs(int keepTabCount)
+	{
+		if(keepTabCount < 1) throw new IllegalArgumentException("keepTabCount must be positive");
+
+		int evictedCount = 0;
+		while(true)
+		{
+			int startedCount = 0;
+			int oldestTab = -1;
+			for(int i = 0; i < navigators.length; ++i)
+			{
+				if(!isTabStarted[i] || lastUsedTicks[i] == 0) continue;
+				++startedCount;
+				if(i != currentTab && (oldestTab < 0 || lastUsedTicks[i] < lastUsedTicks[oldestTab])) oldestTab = i;
+			}
+			if(startedCount <= keepTabCount || oldestTab < 0) return evictedCount;
+
+			evictTab(oldestTab);
+			++evictedCount;
+		}
+	}
+
+	/**
+	 * Evict the back stack of the given tab, so that it only keeps its default entry and no saved state. Nothing
+	 * happens to the current tab or a tab which has not been shown.
+	 * @param tabIndex The tab to evict.
+	 */
+	final public void evictTab(int tabIndex)
+	{
+		checkTabIndex(tabIndex);
+		if(tabIndex == currentTab || !isTabStarted[tabIndex]) return;
+		navigators[tabIndex].trimSceneStack();
+		lastUsedTicks[tabIndex] = 0;
+	}
+
+	/**
+	 * Save the back stacks of all tabs and the current tab into the given bundle. Back stacks of tabs which have not
+	 * been shown since they were restored are saved as they were restored.
+	 * @param outState The bundle which receives the tabs.
+	 */
+	final public void saveState(@NonNull Bundle outState)
+	{
+		final int tabCount = navigators.length;
+		final Bundle[] tabStates = new Bundle[tabCount];
+		for(int i = 0; i < tabCount; ++i)
+		{
+			if(isTabStarted[i])
+			{
+				tabStates[i] = new Bundle();
+				navigators[i].saveState(tabStates[i]);
+			}
+			else if(pendingTabStates != null)
+			{
+				tabStates[i] = pendingTabStates[i];
+			}
+		}
+		outState.putInt(KEY_CURRENT_TAB, currentTab);
+		outState.putParcelableArray(KEY_TAB_STATES, tabStates);
+	}
+
+	/**
+	 * Call {@link SceneManager#onHide()} of the current tab. This is meant to be used in either <code>onPause()</code>
+	 * or <code>onStop()</code>.
+	 */
+	final public void onHide() { getCurrentNavigator().onHide(); }
+
+	/**
+	 * Call {@link SceneManager#onShow()} of the current tab. This is meant to be used in either <code>onResume()</code>
+	 * or <code>onStart()</code>.
+	 */
+	final public void onShow() { getCurrentNavigator().onShow(); }
+
+	/**
+	 * @return The index of the current tab, or <code>-1</code> if this navigator has not been started.
+	 */
+	final public int getCurrentTab() { return currentTab; }
+
+	final public int getTabCount() { return navigators.length; }
+
+	/**
+	 * Get the navigator of the given tab. Navigators of tabs other than the current one are locked.
+	 * @param tabIndex The tab index.
+	 * @return The navigator of the tab.
+	 */
+	final public @NonNull SceneNavigator<S> getNavigator(int tabIndex)
+	{
+		checkTabIndex(tabIndex);
+		return navigators[tabIndex];
+	}
+
+	/**
+	 * @return The navigator of the current tab.
+	 * @throws IllegalStateException When this navigator has not been started.
+	 */
+	final public @NonNull SceneNavigator<S> getCurrentNavigator()
+	{
+		if(currentTab < 0) throw new IllegalStateException("attempt to get current navigator before starting, call start(int, Bundle) first");
+		return navigators[currentTab];
+	}
+
+	private void checkTabIndex(int tabIndex)
+	{
+		if(tabIndex < 0 || tabIndex >= navigators.length) throw new IllegalArgumentException("invalid tab index " + tabIndex);
+	}
+}
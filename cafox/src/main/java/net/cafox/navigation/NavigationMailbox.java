@@ -0,0 +1,243 @@
+package net.cafox.navigation;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread-safe entry point of a {@link SceneNavigator}. Any thread can submit navigation commands, which are collected
+ * in a lock-free multiple-producer single-consumer mailbox and drained once per frame on the main thread. Before they
+ * reach the navigator, commands of a drain are coalesced by the same rules as queued commands of {@link SceneManager}:
+ * a go-to command followed by a back command cancel out, consecutive replace commands collapse to the last one, and a
+ * reset command discards all commands before it.
+ * <p>
+ * The latency between submitting and draining a command and the number of commands per drain are recorded as metrics.
+ * Metrics are written on the main thread, so they should be read on the main thread.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public class NavigationMailbox<S extends Scene>
+{
+	/**
+	 * A submitted command, linked to the previously submitted command.
+	 */
+	private static final class Command
+	{
+		final int command;
+		final int sceneId;
+		final Object argument;
+		final long submitNanos;
+		Command next;
+
+		Command(int command, int sceneId, Object argument)
+		{
+			this.command = command;
+			this.sceneId = sceneId;
+			this.argument = argument;
+			this.submitNanos = System.nanoTime();
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private class FrameDrainer implements Choreographer.FrameCallback
+	{
+		private final Choreographer choreographer = Choreographer.getInstance();
+
+		@Override
+		public void doFrame(long frameTimeNanos) { drain(); }
+
+		void schedule() { choreographer.postFrameCallback(this); }
+	}
+
+	private final SceneNavigator<S> sceneNavigator;
+	private final AtomicReference<Command> head = new AtomicReference<>();
+	private final AtomicBoolean isDrainScheduled = new AtomicBoolean();
+	private final ArrayList<Command> batch = new ArrayList<>();
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final FrameDrainer frameDrainer;
+	private final Runnable drainRunnable = new Runnable()
+	{
+		@Override
+		public void run() { drain(); }
+	};
+
+	private long lastDrainLatencyNanos;
+	private long maxDrainLatencyNanos;
+	private int lastQueueDepth;
+	private int maxQueueDepth;
+	private int submittedCount;
+	private int dispatchedCount;
+
+	/**
+	 * Construct a navigation mailbox. This must be called on the main thread.
+	 * @param sceneNavigator The scene navigator to which drained commands are dispatched.
+	 */
+	public NavigationMailbox(@NonNull SceneNavigator<S> sceneNavigator)
+	{
+		if(Looper.myLooper() != Looper.getMainLooper()) throw new IllegalStateException("navigation mailbox must be constructed on the main thread");
+		this.sceneNavigator = sceneNavigator;
+		this.frameDrainer = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameDrainer() : null;
+	}
+
+	/**
+	 * Submit a go-to command. See {@link SceneNavigator#goTo(int, Object)}. This can be called on any thread.
+	 */
+	public void goTo(int sceneId, @Nullable Object argument) { submit(new Command(SceneManager.COMMAND_GO_TO, sceneId, argument)); }
+
+	/**
+	 * Submit a replace command. See {@link SceneNavigator#replace(int, Object)}. This can be called on any thread.
+	 */
+	public void replace(int sceneId, @Nullable Object argument) { submit(new Command(SceneManager.COMMAND_REPLACE, sceneId, argument)); }
+
+	/**
+	 * Submit a reset command. See {@link SceneNavigator#reset(int, Object)}. This can be called on any thread.
+	 */
+	public void reset(int sceneId, @Nullable Object argument) { submit(new Command(SceneManager.COMMAND_RESET, sceneId, argument)); }
+
+	/**
+	 * Submit a back command. See {@link SceneNavigator#back()}. This can be called on any thread.
+	 */
+	public void back() { submit(new Command(SceneManager.COMMAND_BACK, 0, null)); }
+
+	private void submit(Command command)
+	{
+		Command oldHead;
+		do
+		{
+			oldHead = head.get();
+			command.next = oldHead;
+		}
+		while(!head.compareAndSet(oldHead, command));
+
+		if(!isDrainScheduled.compareAndSet(false, true)) return;
+		if(frameDrainer != null) frameDrainer.schedule();
+		else mainHandler.post(drainRunnable);
+	}
+
+	/**
+	 * Drain all submitted commands, coalesce them and dispatch them to the navigator. This runs on the main thread.
+	 */
+	private void drain()
+	{
+		// Clear the flag first, so that commands submitted from now on schedule another drain.
+		isDrainScheduled.set(false);
+		Command command = head.getAndSet(null);
+		if(command == null) return;
+
+		// Commands are linked from the newest to the oldest, so reverse them.
+		Command oldest = null;
+		int depth = 0;
+		while(command != null)
+		{
+			final Command next = command.next;
+			command.next = oldest;
+			oldest = command;
+			command = next;
+			++depth;
+		}
+
+		final long latencyNanos = System.nanoTime() - oldest.submitNanos;
+		lastDrainLatencyNanos = latencyNanos;
+		maxDrainLatencyNanos = Math.max(maxDrainLatencyNanos, latencyNanos);
+		lastQueueDepth = depth;
+		maxQueueDepth = Math.max(maxQueueDepth, depth);
+		submittedCount += depth;
+
+		for(command = oldest; command != null; command = command.next)
+		{
+			coalesce(command);
+		}
+
+		final int batchCount = batch.size();
+		dispatchedCount += batchCount;
+		for(int i = 0; i < batchCount; ++i)
+		{
+			dispatch(batch.get(i));
+		}
+		batch.clear();
+	}
+
+	private void coalesce(Command command)
+	{
+		final int batchCount = batch.size();
+		final Command lastCommand = batchCount > 0 ? batch.get(batchCount - 1) : null;
+		// Arguments of commands coalesced away never reach a scene, so recycle them if they are pooled.
+		switch(SceneManager.coalesceCommand(lastCommand == null ? -1 : lastCommand.command, command.command))
+		{
+			case SceneManager.COALESCE_CANCEL:
+				sceneNavigator.recycleArgument(batch.remove(batchCount - 1).argument);
+				return;
+			case SceneManager.COALESCE_REPLACE_LAST:
+				if(lastCommand.argument != command.argument) sceneNavigator.recycleArgument(lastCommand.argument);
+				batch.set(batchCount - 1, command);
+				return;
+			case SceneManager.COALESCE_DISCARD_ALL:
+				for(int i = 0; i < batchCount; ++i)
+				{
+					sceneNavigator.recycleArgument(batch.get(i).argument);
+				}
+				batch.clear();
+				break;
+		}
+		batch.add(command);
+	}
+
+	private void dispatch(Command command)
+	{
+		switch(command.command)
+		{
+			case SceneManager.COMMAND_GO_TO: sceneNavigator.goTo(command.sceneId, command.argument); break;
+			case SceneManager.COMMAND_REPLACE: sceneNavigator.replace(command.sceneId, command.argument); break;
+			case SceneManager.COMMAND_RESET: sceneNavigator.reset(command.sceneId, command.argument); break;
+			case SceneManager.COMMAND_BACK: sceneNavigator.back(); break;
+		}
+	}
+
+	/**
+	 * @return The time between submitting the oldest command of the last drain and the drain, in nanoseconds.
+	 */
+	final public long getLastDrainLatencyNanos() { return lastDrainLatencyNanos; }
+
+	/**
+	 * @return The maximum drain latency since construction or {@link #resetMetrics()}, in nanoseconds.
+	 */
+	final public long getMaxDrainLatencyNanos() { return maxDrainLatencyNanos; }
+
+	/**
+	 * @return The number of commands collected by the last drain, before coalescing.
+	 */
+	final public int getLastQueueDepth() { return lastQueueDepth; }
+
+	/**
+	 * @return The maximum number of commands collected by a drain since construction or {@link #resetMetrics()}.
+	 */
+	final public int getMaxQueueDepth() { return maxQueueDepth; }
+
+	/**
+	 * @return The number of drained commands since construction or {@link #resetMetrics()}, before coalescing.
+	 */
+	final public int getSubmittedCount() { return submittedCount; }
+
+	/**
+	 * @return The number of commands dispatched to the navigator since construction or {@link #resetMetrics()}, after
+	 * coalescing.
+	 */
+	final public int getDispatchedCount() { return dispatchedCount; }
+
+	final public void resetMetrics()
+	{
+		lastDrainLatencyNanos = 0;
+		maxDrainLatencyNanos = 0;
+		lastQueueDepth = 0;
+		maxQueueDepth = 0;
+		submittedCount = 0;
+		dispatchedCount = 0;
+	}
+}
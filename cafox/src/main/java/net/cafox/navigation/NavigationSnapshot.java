@@ -0,0 +1,97 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The file format of back stacks written by {@link SceneManager#saveSnapshot(File)}. All values are big-endian:
+ * <pre>
+ * int magic, int version, int sceneCount,
+ * sceneCount x (int sceneId, int stateLength, stateLength bytes of state)
+ * </pre>
+ * A state length of <code>-1</code> means the entry has no state. Files with another magic or version are ignored, so
+ * changing the layout only requires bumping {@link #VERSION}.
+ */
+final class NavigationSnapshot
+{
+	private final static int MAGIC = 0x43464e53;
+
+	private final static int VERSION = 1;
+
+	static final int NO_STATE = -1;
+
+	private NavigationSnapshot() {}
+
+	/**
+	 * Write the back stack of the given scene manager. The file is written to a temporary file first, then renamed to
+	 * the given file, so a crash while writing never leaves a partial snapshot behind.
+	 * @param sceneManager The scene manager.
+	 * @param file The file to write.
+	 * @throws IOException When the file cannot be written.
+	 */
+	static void write(@NonNull SceneManager<?> sceneManager, @NonNull File file) throws IOException
+	{
+		final File tempFile = new File(file.getPath() + ".tmp");
+		boolean isRenamed = false;
+		try
+		{
+			final FileOutputStream fileOut = new FileOutputStream(tempFile);
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			try
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				sceneManager.writeSnapshotEntries(out);
+
+				// Make the data durable before the rename makes it visible, so that a power loss cannot leave an empty file.
+				out.flush();
+				fileOut.getFD().sync();
+			}
+			finally
+			{
+				out.close();
+			}
+			if(!tempFile.renameTo(file)) throw new IOException("cannot rename " + tempFile + " to " + file);
+			isRenamed = true;
+		}
+		finally
+		{
+			if(!isRenamed) tempFile.delete();
+		}
+	}
+
+	/**
+	 * Map the given snapshot file into memory. The mapping stays valid after the file is closed, so states of entries
+	 * are read straight from the page cache when their scenes are materialized, without copying.
+	 * @param file The snapshot file.
+	 * @return The read-only buffer positioned after the header, or <code>null</code> if the file does not exist or is
+	 * not a snapshot of the current version.
+	 * @throws IOException When the file cannot be read.
+	 */
+	static @Nullable ByteBuffer map(@NonNull File file) throws IOException
+	{
+		if(!file.isFile()) return null;
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			final long length = in.length();
+			if(length < 12 || length > Integer.MAX_VALUE) return null;
+			final ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+			return buffer;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
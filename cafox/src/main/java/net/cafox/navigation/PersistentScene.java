@@ -0,0 +1,34 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An optional extension of {@link Scene} for scenes which persist a compact state across process restarts. When the
+ * back stack is written by {@link SceneManager#saveSnapshot(File)}, each materialized persistent scene writes its state
+ * as raw bytes, which are handed back to {@link #onReadSnapshot(ByteBuffer)} when the scene is re-created after the back
+ * stack is restored by {@link SceneNavigator#showDefaultScene(SceneNavigator.SceneHandler, int, File, int)}.
+ * <p>
+ * Values written by <code>DataOutput</code> are big-endian, as are the default reads of <code>ByteBuffer</code>, so
+ * for example {@link DataOutput#writeLong(long)} is read back by {@link ByteBuffer#getLong()}.
+ */
+public interface PersistentScene extends Scene
+{
+	/**
+	 * Write the state of this scene. Keep it small: it is written on every snapshot and read back during startup.
+	 * @param out The output which receives the state. It belongs to this scene only.
+	 * @throws IOException When the state cannot be written.
+	 */
+	void onWriteSnapshot(@NonNull DataOutput out) throws IOException;
+
+	/**
+	 * Read the state of this scene. This is called after {@link #onSetArgument(Object)} and before the scene is shown.
+	 * @param in The read-only buffer which contains exactly the bytes written by {@link #onWriteSnapshot(DataOutput)},
+	 *           from its position to its limit. It must not be kept after this call returns.
+	 */
+	void onReadSnapshot(@NonNull ByteBuffer in);
+}
@@ -0,0 +1,22 @@
+package net.cafox.navigation;
+
+/**
+ * An optional extension of {@link Scene} for scenes which can be recycled by a {@link ScenePool}. When an
+ * {@link AllocateSceneProvider} with a scene pool hides a recyclable scene which is no longer in the back stack, the
+ * scene is kept in the pool instead of being released, and handed out again the next time a scene with the same scene
+ * id is needed, so that its view is not inflated again.
+ */
+public interface RecyclableScene extends Scene
+{
+	/**
+	 * Called when this scene is put into a scene pool. Release resources which should not be held while pooled, such as
+	 * loaded bitmaps or listeners.
+	 */
+	void onRecycle();
+
+	/**
+	 * Called when this scene is taken out of a scene pool, before {@link #onSetArgument(Object)}. Reset the state left
+	 * by its previous use.
+	 */
+	void onReuse();
+}
@@ -0,0 +1,66 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A reusable argument of a scene with primitive slots, so that navigating with ids or positions neither boxes them nor
+ * allocates a wrapper. Arguments are obtained from a navigator by {@link SceneManager#obtainArgument()}, or implicitly
+ * by overloads such as {@link SceneNavigator#goToWithId(int, long)}, and received by {@link Scene#onSetArgument(Object)}.
+ * <p>
+ * An argument belongs to the back stack entry it is passed to, so that the scene can be materialized again with it,
+ * and is recycled by the navigator when the entry is removed from the back stack. Scenes should hence copy the values
+ * they need instead of keeping the argument, and should never pass a received argument to another navigation command.
+ */
+public final class SceneArgument
+{
+	private long longValue;
+	private int intValue;
+	private double doubleValue;
+	private Object objectValue;
+
+	SceneArgument() {}
+
+	public long getLong() { return longValue; }
+
+	public int getInt() { return intValue; }
+
+	public double getDouble() { return doubleValue; }
+
+	public @Nullable Object getObject() { return objectValue; }
+
+	public @NonNull SceneArgument setLong(long longValue)
+	{
+		this.longValue = longValue;
+		return this;
+	}
+
+	public @NonNull SceneArgument setInt(int intValue)
+	{
+		this.intValue = intValue;
+		return this;
+	}
+
+	public @NonNull SceneArgument setDouble(double doubleValue)
+	{
+		this.doubleValue = doubleValue;
+		return this;
+	}
+
+	public @NonNull SceneArgument setObject(@Nullable Object objectValue)
+	{
+		this.objectValue = objectValue;
+		return this;
+	}
+
+	/**
+	 * Reset all slots, so that a recycled argument neither leaks values nor keeps objects reachable.
+	 */
+	void clear()
+	{
+		longValue = 0;
+		intValue = 0;
+		doubleValue = 0;
+		objectValue = null;
+	}
+}
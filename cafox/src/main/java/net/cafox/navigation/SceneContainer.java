@@ -0,0 +1,227 @@
+package net.cafox.navigation;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * A view group container of scenes which can take hidden scenes out of layout passes. Views detached from layout by
+ * {@link #detachFromLayout(View)} stay in the container, so they stay attached to the window, but they are neither
+ * measured, laid out nor drawn. Their measured size and position are kept, so that {@link #attachToLayout(View)} can
+ * show them again without measuring or laying them out when neither the container size nor the view has changed since
+ * they were last measured.
+ * <p>
+ * Children are stacked on top of each other at the top left corner of the container, offset by padding and margins,
+ * which is how scenes occupying the whole container are normally laid out. The container itself should have a fixed
+ * or <code>match_parent</code> size.
+ */
+public class SceneContainer extends ViewGroup
+{
+	/**
+	 * Layout parameters of {@link SceneContainer}. They record whether a child is detached from layout and the
+	 * measure specs the container was given when the child was last measured.
+	 */
+	public static class LayoutParams extends MarginLayoutParams
+	{
+		private boolean isDetachedFromLayout;
+		private int lastWidthMeasureSpec;
+		private int lastHeightMeasureSpec;
+
+		public LayoutParams(Context c, AttributeSet attrs) { super(c, attrs); }
+
+		public LayoutParams(int width, int height) { super(width, height); }
+
+		public LayoutParams(ViewGroup.LayoutParams source) { super(source); }
+
+		public LayoutParams(MarginLayoutParams source) { super(source); }
+	}
+
+	/**
+	 * Receives touch events of the container before its children, for gestures across scenes such as swipe-back.
+	 */
+	interface TouchInterceptor
+	{
+		/**
+		 * See {@link ViewGroup#onInterceptTouchEvent(MotionEvent)}.
+		 */
+		boolean onInterceptTouchEvent(MotionEvent event);
+
+		/**
+		 * See {@link View#onTouchEvent(MotionEvent)}.
+		 */
+		boolean onTouchEvent(MotionEvent event);
+
+		/**
+		 * Called when a child disallows the container to intercept touch events.
+		 */
+		void onDisallowInterceptTouchEvent();
+	}
+
+	private int lastWidthMeasureSpec;
+	private int lastHeightMeasureSpec;
+	private TouchInterceptor touchInterceptor;
+
+	public SceneContainer(Context context) { super(context); }
+
+	public SceneContainer(Context context, AttributeSet attrs) { super(context, attrs); }
+
+	public SceneContainer(Context context, AttributeSet attrs, int defStyleAttr) { super(context, attrs, defStyleAttr); }
+
+	/**
+	 * Take the given child out of layout passes and hide it. Nothing happens if it is already detached from layout.
+	 * @param child A child of this container.
+	 */
+	public void detachFromLayout(@NonNull View child)
+	{
+		final LayoutParams lp = getChildLayoutParams(child);
+		lp.isDetachedFromLayout = true;
+		child.setVisibility(View.INVISIBLE);
+	}
+
+	/**
+	 * Put the given child back into layout passes and show it. If neither the container size nor the child has
+	 * changed since the child was last measured, the child is shown with its cached measured size and position and
+	 * no layout is requested.
+	 * @param child A child of this container.
+	 */
+	public void attachToLayout(@NonNull View child)
+	{
+		final LayoutParams lp = getChildLayoutParams(child);
+		lp.isDetachedFromLayout = false;
+		child.setVisibility(View.VISIBLE);
+
+		final boolean isMeasureValid = !child.isLayoutRequested()
+				&& lp.lastWidthMeasureSpec == lastWidthMeasureSpec
+				&& lp.lastHeightMeasureSpec == lastHeightMeasureSpec;
+		if(!isMeasureValid || isLayoutRequested()) requestLayout();
+	}
+
+	/**
+	 * @param child A child of this container.
+	 * @return <code>true</code> if the child is detached from layout, <code>false</code> otherwise.
+	 */
+	public boolean isDetachedFromLayout(@NonNull View child) { return getChildLayoutParams(child).isDetachedFromLayout; }
+
+	/**
+	 * Measure and lay out the given child detached from layout with the measure specs the container was last given,
+	 * so that {@link #attachToLayout(View)} can show it without another layout pass. Nothing happens if the child is
+	 * attached to layout or the container has not been measured.
+	 * @param child A child of this container.
+	 */
+	void measureDetachedChild(@NonNull View child)
+	{
+		final LayoutParams lp = getChildLayoutParams(child);
+		if(!lp.isDetachedFromLayout || (lastWidthMeasureSpec == 0 && lastHeightMeasureSpec == 0)) return;
+
+		measureChildWithMargins(child, lastWidthMeasureSpec, 0, lastHeightMeasureSpec, 0);
+		lp.lastWidthMeasureSpec = lastWidthMeasureSpec;
+		lp.lastHeightMeasureSpec = lastHeightMeasureSpec;
+		final int left = getPaddingLeft() + lp.leftMargin;
+		final int top = getPaddingTop() + lp.topMargin;
+		child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+	}
+
+	private @NonNull LayoutParams getChildLayoutParams(View child)
+	{
+		if(child.getParent() != this) throw new IllegalArgumentException("view is not a child of this container");
+		return (LayoutParams) child.getLayoutParams();
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+	{
+		lastWidthMeasureSpec = widthMeasureSpec;
+		lastHeightMeasureSpec = heightMeasureSpec;
+
+		int maxWidth = 0;
+		int maxHeight = 0;
+		int childState = 0;
+		final int childCount = getChildCount();
+		for(int i = 0; i < childCount; ++i)
+		{
+			final View child = getChildAt(i);
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			if(child.getVisibility() == View.GONE || lp.isDetachedFromLayout) continue;
+
+			measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, 0);
+			lp.lastWidthMeasureSpec = widthMeasureSpec;
+			lp.lastHeightMeasureSpec = heightMeasureSpec;
+			maxWidth = Math.max(maxWidth, child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin);
+			maxHeight = Math.max(maxHeight, child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin);
+			childState = combineMeasuredStates(childState, child.getMeasuredState());
+		}
+
+		maxWidth = Math.max(maxWidth + getPaddingLeft() + getPaddingRight(), getSuggestedMinimumWidth());
+		maxHeight = Math.max(maxHeight + getPaddingTop() + getPaddingBottom(), getSuggestedMinimumHeight());
+		setMeasuredDimension(resolveSizeAndState(maxWidth, widthMeasureSpec, childState),
+				resolveSizeAndState(maxHeight, heightMeasureSpec, childState << MEASURED_HEIGHT_STATE_SHIFT));
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int l, int t, int r, int b)
+	{
+		final int childCount = getChildCount();
+		for(int i = 0; i < childCount; ++i)
+		{
+			final View child = getChildAt(i);
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			if(child.getVisibility() == View.GONE || lp.isDetachedFromLayout) continue;
+
+			final int left = getPaddingLeft() + lp.leftMargin;
+			final int top = getPaddingTop() + lp.topMargin;
+			child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+		}
+	}
+
+	/**
+	 * Set the touch interceptor of this container.
+	 * @param touchInterceptor The touch interceptor, or <code>null</code> to remove it.
+	 */
+	void setTouchInterceptor(@Nullable TouchInterceptor touchInterceptor) { this.touchInterceptor = touchInterceptor; }
+
+	@Override
+	public boolean onInterceptTouchEvent(MotionEvent event)
+	{
+		return touchInterceptor != null && touchInterceptor.onInterceptTouchEvent(event);
+	}
+
+	@Override
+	public void requestDisallowInterceptTouchEvent(boolean disallowIntercept)
+	{
+		if(disallowIntercept && touchInterceptor != null) touchInterceptor.onDisallowInterceptTouchEvent();
+		super.requestDisallowInterceptTouchEvent(disallowIntercept);
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event)
+	{
+		if(touchInterceptor != null && touchInterceptor.onTouchEvent(event)) return true;
+		return super.onTouchEvent(event);
+	}
+
+	@Override
+	public boolean shouldDelayChildPressedState() { return false; }
+
+	@Override
+	protected boolean checkLayoutParams(ViewGroup.LayoutParams p) { return p instanceof LayoutParams; }
+
+	@Override
+	protected LayoutParams generateDefaultLayoutParams()
+	{
+		return new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+	}
+
+	@Override
+	public LayoutParams generateLayoutParams(AttributeSet attrs) { return new LayoutParams(getContext(), attrs); }
+
+	@Override
+	protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams p)
+	{
+		if(p instanceof MarginLayoutParams) return new LayoutParams((MarginLayoutParams) p);
+		return new LayoutParams(p);
+	}
+}
@@ -0,0 +1,17 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A factory which creates scenes on demand, used by scene providers which construct scenes lazily.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public interface SceneFactory<S extends Scene>
+{
+	/**
+	 * Create a scene that matches the given scene id.
+	 * @param sceneId The scene id of the scene.
+	 * @return The newly created scene. Its scene id must be the given scene id.
+	 */
+	@NonNull S createScene(int sceneId);
+}
@@ -0,0 +1,98 @@
+package net.cafox.navigation;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import net.cafox.widget.CircularBitmapView;
+
+/**
+ * A collection of helpers which estimate how expensive a scene is to keep in memory. The estimation walks the
+ * view hierarchy of a scene, so it is meant to be called on the main thread and not on every frame.
+ */
+public final class SceneFootprint
+{
+	private SceneFootprint() {}
+
+	/**
+	 * Count the views in the hierarchy of the given view, including the view itself.
+	 * @param view The root of the hierarchy.
+	 * @return The number of views.
+	 */
+	public static int countViews(@NonNull View view)
+	{
+		int count = 1;
+		if(view instanceof ViewGroup)
+		{
+			final ViewGroup viewGroup = (ViewGroup) view;
+			final int childCount = viewGroup.getChildCount();
+			for(int i = 0; i < childCount; ++i)
+			{
+				count += countViews(viewGroup.getChildAt(i));
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the depth of the hierarchy of the given view, i.e. the number of views on the longest path from the view to
+	 * a leaf, including both.
+	 * @param view The root of the hierarchy.
+	 * @return The depth, <code>1</code> for a single view.
+	 */
+	public static int getMaxDepth(@NonNull View view)
+	{
+		int maxChildDepth = 0;
+		if(view instanceof ViewGroup)
+		{
+			final ViewGroup viewGroup = (ViewGroup) view;
+			final int childCount = viewGroup.getChildCount();
+			for(int i = 0; i < childCount; ++i)
+			{
+				maxChildDepth = Math.max(maxChildDepth, getMaxDepth(viewGroup.getChildAt(i)));
+			}
+		}
+		return maxChildDepth + 1;
+	}
+
+	/**
+	 * Estimate the number of bytes of bitmaps held by the hierarchy of the given view. Bitmaps are found in
+	 * backgrounds, in drawables of {@link ImageView}s and in {@link CircularBitmapView}s. A bitmap shared by several views is counted once per
+	 * view, so the result is an upper bound.
+	 * @param view The root of the hierarchy.
+	 * @return The estimated number of bytes.
+	 */
+	public static long estimateBitmapBytes(@NonNull View view)
+	{
+		long bytes = getDrawableBytes(view.getBackground());
+		if(view instanceof ImageView) bytes += getDrawableBytes(((ImageView) view).getDrawable());
+		else if(view instanceof CircularBitmapView) bytes += getBitmapBytes(((CircularBitmapView) view).getImageBitmap());
+		if(view instanceof ViewGroup)
+		{
+			final ViewGroup viewGroup = (ViewGroup) view;
+			final int childCount = viewGroup.getChildCount();
+			for(int i = 0; i < childCount; ++i)
+			{
+				bytes += estimateBitmapBytes(viewGroup.getChildAt(i));
+			}
+		}
+		return bytes;
+	}
+
+	private static long getDrawableBytes(@Nullable Drawable drawable)
+	{
+		if(!(drawable instanceof BitmapDrawable)) return 0;
+		return getBitmapBytes(((BitmapDrawable) drawable).getBitmap());
+	}
+
+	static long getBitmapBytes(@Nullable Bitmap bitmap)
+	{
+		if(bitmap == null || bitmap.isRecycled()) return 0;
+		return bitmap.getByteCount();
+	}
+}
@@ -1,7 +1,20 @@
 package net.cafox.navigation;
 
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,20 +27,427 @@ import java.util.List;
  * When this manager is locked by calling {@link #setIsLocked(boolean)}, any attempt to modify the scene stack causes an exception to be thrown.
  * Subclasses should always check whether navigation is locked by calling {@link #isLocked()} before modifying the scene stack. They should also
  * always make sure their navigation behavior is locked accordingly.
+ * <p>
+ * Navigation commands issued while navigation is locked are dropped by default. When command queueing is enabled by
+ * {@link #setIsQueueingCommands(boolean)}, they are recorded instead and replayed when navigation is unlocked. Queued
+ * commands are coalesced: a go-to command followed by a back command cancel out, consecutive replace commands and
+ * consecutive jump commands of {@link TaskNavigator} collapse to the last one, and a reset command discards all commands
+ * queued before it.
+ * <p>
+ * Timings of every navigation command can be reported to a {@link TransitionListener} set by
+ * {@link #setTransitionListener(TransitionListener)}.
+ * <p>
+ * Entries of the back stack do not have to be materialized. An entry pushed by {@link #pushScene(int, Object)} only records
+ * a scene id and an argument, and its scene is created by {@link #onMaterializeScene(int, Object)} the first time it is
+ * needed, typically when it becomes the current scene again.
+ * <p>
+ * The back stack can be saved into a <code>Bundle</code> by {@link #saveState(Bundle)}, as an array of scene ids plus the
+ * states of {@link StatefulScene}s. Restoring it pushes entries which are not materialized, so only the current scene is
+ * created when it is restored, and other scenes are created when going back to them.
+ * <p>
+ * To survive process restarts, for example across app updates, the back stack can also be written to a file by
+ * {@link #saveSnapshot(File)}, as scene ids plus the states of {@link PersistentScene}s, and restored from it by
+ * {@link SceneNavigator#showDefaultScene(SceneNavigator.SceneHandler, int, File, int)} in the same manner.
  * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
  */
-abstract class SceneManager<S extends Scene>
+public abstract class SceneManager<S extends Scene>
 {
 	private final static int MIN_SCENE_STACK_COUNT = 1;
 
-	private List<S> sceneStack = new ArrayList<>();
+	private final static String KEY_SCENE_IDS = "net.cafox.navigation.SceneManager.sceneIds";
+
+	private final static String KEY_SCENE_STATES = "net.cafox.navigation.SceneManager.sceneStates";
+
+	/**
+	 * An entry of the back stack. The scene is <code>null</code> when the entry is not materialized.
+	 */
+	static final class SceneRecord<S extends Scene>
+	{
+		int sceneId;
+		S scene;
+		Object argument;
+		Bundle savedState;
+		ByteBuffer snapshotState;
+	}
+
+	static final int COMMAND_GO_TO = 0;
+	static final int COMMAND_REPLACE = 1;
+	static final int COMMAND_RESET = 2;
+	static final int COMMAND_BACK = 3;
+	static final int COMMAND_JUMP_TO = 4;
+	static final int COMMAND_COMMIT = 5;
+
+	static final int COALESCE_APPEND = 0;
+	static final int COALESCE_CANCEL = 1;
+	static final int COALESCE_REPLACE_LAST = 2;
+	static final int COALESCE_DISCARD_ALL = 3;
+
+	/**
+	 * A navigation command issued while navigation is locked.
+	 */
+	private static final class QueuedCommand
+	{
+		int command;
+		int sceneId;
+		Object argument;
+	}
+
+	/**
+	 * Reports the time from the end of a navigation command to the next frame.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private class FirstFrameCallback implements Choreographer.FrameCallback
+	{
+		private int navigation;
+		private int sceneId;
+		private long endNanos;
+		private boolean isScheduled;
+
+		void schedule(int navigation, int sceneId, long endNanos)
+		{
+			this.navigation = navigation;
+			this.sceneId = sceneId;
+			this.endNanos = endNanos;
+			if(isScheduled) return;
+			isScheduled = true;
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos)
+		{
+			isScheduled = false;
+			final TransitionListener listener = transitionListener;
+			if(listener != null) listener.onFirstFrame(navigation, sceneId, System.nanoTime() - endNanos);
+		}
+	}
+
+	private List<SceneRecord<S>> sceneStack = new ArrayList<>();
+	private List<SceneRecord<S>> recycledRecords = new ArrayList<>();
+	private final List<SceneArgument> recycledArguments = new ArrayList<>();
+
+	/**
+	 * Arguments of entries removed from the back stack whose scenes have not been hidden yet. See
+	 * {@link #recycleReleasedArguments()}.
+	 */
+	private final List<SceneArgument> releasedArguments = new ArrayList<>();
 	private boolean isLocked;
+	private int lockChangeCount;
+	private boolean isQueueingCommands;
+	private boolean isReplayingCommands;
+	private final ArrayDeque<QueuedCommand> commandQueue = new ArrayDeque<>();
+	private final List<QueuedCommand> recycledCommands = new ArrayList<>();
+	private TransitionListener transitionListener;
+	private FirstFrameCallback firstFrameCallback;
+	private long timingStartNanos;
+	private long scenesObtainedNanos;
+	private long sceneCallbacksDoneNanos;
 	private boolean isDefaultScenePushed;
 
 	final void pushDefaultScene(S defaultScene)
 	{
 		isDefaultScenePushed = true;
-		sceneStack.add(defaultScene);
+		sceneStack.add(obtainRecord(defaultScene.getSceneId(), defaultScene, null));
+	}
+
+	/**
+	 * Create the scene of an entry which is not materialized. This is called when the entry is needed, for example when
+	 * it becomes the current scene.
+	 * @param sceneId The scene id of the entry.
+	 * @param argument The argument of the entry.
+	 * @return The scene, ready to be shown.
+	 */
+	abstract @NonNull S onMaterializeScene(int sceneId, @Nullable Object argument);
+
+	private SceneRecord<S> obtainRecord(int sceneId, S scene, Object argument)
+	{
+		final int recycledRecordCount = recycledRecords.size();
+		final SceneRecord<S> record = recycledRecordCount > 0 ? recycledRecords.remove(recycledRecordCount - 1) : new SceneRecord<S>();
+		record.sceneId = sceneId;
+		record.scene = scene;
+		record.argument = argument;
+		record.savedState = null;
+		record.snapshotState = null;
+		return record;
+	}
+
+	private void recycleRecord(SceneRecord<S> record)
+	{
+		recycleArgument(record.argument);
+		record.scene = null;
+		record.argument = null;
+		record.savedState = null;
+		record.snapshotState = null;
+		recycledRecords.add(record);
+	}
+
+	private @NonNull S materialize(SceneRecord<S> record)
+	{
+		if(record.scene != null) return record.scene;
+
+		final S scene = onMaterializeScene(record.sceneId, record.argument);
+		if(record.savedState != null && scene instanceof StatefulScene) ((StatefulScene) scene).onRestoreState(record.savedState);
+		if(record.snapshotState != null && scene instanceof PersistentScene) ((PersistentScene) scene).onReadSnapshot(record.snapshotState);
+		record.scene = scene;
+		record.savedState = null;
+		record.snapshotState = null;
+		return scene;
+	}
+
+	/**
+	 * Save the back stack into the given bundle as an array of scene ids and an array of per-scene states. Materialized
+	 * {@link StatefulScene}s save their states by {@link StatefulScene#onSaveState(Bundle)}. Entries which are not
+	 * materialized keep the states they were restored with. Arguments of scenes are not saved.
+	 * <p>
+	 * The back stack is saved under fixed keys, so navigators sharing a bundle should each save into a nested bundle.
+	 * @param outState The bundle which receives the back stack.
+	 * @throws IllegalStateException When the default scene has not been shown.
+	 */
+	final public void saveState(@NonNull Bundle outState)
+	{
+		checkIsDefaultScenePushed();
+
+		final int sceneCount = sceneStack.size();
+		final int[] sceneIds = new int[sceneCount];
+		final Bundle[] sceneStates = new Bundle[sceneCount];
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			final SceneRecord<S> record = sceneStack.get(i);
+			sceneIds[i] = record.sceneId;
+			if(record.scene instanceof StatefulScene)
+			{
+				final Bundle sceneState = new Bundle();
+				((StatefulScene) record.scene).onSaveState(sceneState);
+				sceneStates[i] = sceneState;
+			}
+			else
+			{
+				sceneStates[i] = record.savedState;
+			}
+		}
+		outState.putIntArray(KEY_SCENE_IDS, sceneIds);
+		outState.putParcelableArray(KEY_SCENE_STATES, sceneStates);
+	}
+
+	/**
+	 * Restore the back stack saved by {@link #saveState(Bundle)} in place of pushing the default scene. All entries are
+	 * pushed without being materialized.
+	 * @param savedState The bundle which contains the back stack, or <code>null</code>.
+	 * @return <code>true</code> if the back stack is restored, <code>false</code> if the bundle does not contain one.
+	 * @throws IllegalStateException When the default scene has been pushed.
+	 */
+	final boolean restoreSceneStack(@Nullable Bundle savedState)
+	{
+		if(isDefaultScenePushed) throw new IllegalStateException("attempt to restore scene stack when default scene has been pushed");
+		if(savedState == null) return false;
+		final int[] sceneIds = savedState.getIntArray(KEY_SCENE_IDS);
+		if(sceneIds == null || sceneIds.length < MIN_SCENE_STACK_COUNT) return false;
+		final Parcelable[] sceneStates = savedState.getParcelableArray(KEY_SCENE_STATES);
+
+		final int sceneCount = sceneIds.length;
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			final SceneRecord<S> record = obtainRecord(sceneIds[i], null, null);
+			if(sceneStates != null && i < sceneStates.length) record.savedState = (Bundle) sceneStates[i];
+			sceneStack.add(record);
+		}
+		isDefaultScenePushed = true;
+		return true;
+	}
+
+	/**
+	 * Write the back stack into the given file as scene ids plus per-scene states, so that it can be restored by
+	 * {@link SceneNavigator#showDefaultScene(SceneNavigator.SceneHandler, int, File, int)} after the process restarts.
+	 * Materialized {@link PersistentScene}s write their states by {@link PersistentScene#onWriteSnapshot(java.io.DataOutput)}.
+	 * Entries which are not materialized keep the states they were restored with. Arguments of scenes and states of
+	 * {@link StatefulScene}s are not written.
+	 * <p>
+	 * The file is written to a temporary file first, then renamed to the given file. This does disk I/O, so call it
+	 * when the app goes to the background, for example in <code>onStop()</code>.
+	 * @param file The file to write, typically in <code>Context.getFilesDir()</code>.
+	 * @throws IOException When the file cannot be written.
+	 * @throws IllegalStateException When the default scene has not been shown.
+	 */
+	final public void saveSnapshot(@NonNull File file) throws IOException
+	{
+		checkIsDefaultScenePushed();
+		NavigationSnapshot.write(this, file);
+	}
+
+	final void writeSnapshotEntries(DataOutputStream out) throws IOException
+	{
+		final int sceneCount = sceneStack.size();
+		out.writeInt(sceneCount);
+		ByteArrayOutputStream stateBytes = null;
+		DataOutputStream stateOut = null;
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			final SceneRecord<S> record = sceneStack.get(i);
+			out.writeInt(record.sceneId);
+			if(record.scene instanceof PersistentScene)
+			{
+				if(stateOut == null)
+				{
+					stateBytes = new ByteArrayOutputStream();
+					stateOut = new DataOutputStream(stateBytes);
+				}
+				stateBytes.reset();
+				((PersistentScene) record.scene).onWriteSnapshot(stateOut);
+				stateOut.flush();
+				out.writeInt(stateBytes.size());
+				stateBytes.writeTo(out);
+			}
+			else if(record.scene == null && record.snapshotState != null)
+			{
+				final ByteBuffer state = record.snapshotState.duplicate();
+				final byte[] bytes = new byte[state.remaining()];
+				state.get(bytes);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			else
+			{
+				out.writeInt(NavigationSnapshot.NO_STATE);
+			}
+		}
+	}
+
+	/**
+	 * Restore the back stack from a snapshot mapped by {@link NavigationSnapshot#map(File)} in place of pushing the
+	 * default scene. All entries are pushed without being materialized, and their states are slices of the snapshot,
+	 * which are only read when the entries are materialized.
+	 * @param snapshot The snapshot, positioned at the scene count.
+	 * @param sceneCount The number of scenes. Valid scene ids range from <code>0</code> to <code>sceneCount - 1</code>.
+	 * @return <code>true</code> if the back stack is restored, <code>false</code> if the snapshot is corrupted or
+	 * contains an invalid scene id.
+	 * @throws IllegalStateException When the default scene has been pushed.
+	 */
+	final boolean restoreSceneStack(@NonNull ByteBuffer snapshot, int sceneCount)
+	{
+		if(isDefaultScenePushed) throw new IllegalStateException("attempt to restore scene stack when default scene has been pushed");
+		try
+		{
+			final int entryCount = snapshot.getInt();
+			if(entryCount < MIN_SCENE_STACK_COUNT) return false;
+			for(int i = 0; i < entryCount; ++i)
+			{
+				// Scene ids may have changed since the snapshot was written, for example by an app update.
+				final int sceneId = snapshot.getInt();
+				if(sceneId < 0 || sceneId >= sceneCount)
+				{
+					clearSceneStack();
+					return false;
+				}
+				final SceneRecord<S> record = obtainRecord(sceneId, null, null);
+				sceneStack.add(record);
+				final int stateLength = snapshot.getInt();
+				if(stateLength == NavigationSnapshot.NO_STATE) continue;
+				if(stateLength < 0 || stateLength > snapshot.remaining()) throw new BufferUnderflowException();
+				final ByteBuffer state = snapshot.slice();
+				state.limit(stateLength);
+				snapshot.position(snapshot.position() + stateLength);
+				record.snapshotState = state;
+			}
+		}
+		catch(BufferUnderflowException e)
+		{
+			clearSceneStack();
+			return false;
+		}
+		isDefaultScenePushed = true;
+		return true;
+	}
+
+	private void clearSceneStack()
+	{
+		for(int i = sceneStack.size() - 1; i >= 0; --i)
+		{
+			recycleRecord(sceneStack.remove(i));
+		}
+	}
+
+	/**
+	 * Release the scenes of all entries, so that a scene provider shared with other navigators can hand them out, for
+	 * example to other tabs of a {@link MultiStackNavigator}. Entries keep their scene ids and arguments, and
+	 * {@link StatefulScene}s and {@link PersistentScene}s save their states, so scenes are materialized again as they
+	 * were when they are needed.
+	 */
+	final void dematerializeScenes() { dematerializeScenes(0); }
+
+	/**
+	 * Release the scenes of all entries but the given number of entries at the top of the back stack, for example when
+	 * memory is low. See {@link #dematerializeScenes()}.
+	 * @param keepCount The number of entries at the top of the back stack which keep their scenes.
+	 * @return The estimated bitmap bytes of released scenes whose views are not in a container, i.e. those which
+	 * become unreachable unless the scene provider keeps them.
+	 */
+	final long dematerializeScenes(int keepCount)
+	{
+		long releasedBytes = 0;
+		final int releaseCount = sceneStack.size() - keepCount;
+		for(int i = 0; i < releaseCount; ++i)
+		{
+			final SceneRecord<S> record = sceneStack.get(i);
+			final S scene = record.scene;
+			if(scene == null) continue;
+			if(scene instanceof StatefulScene)
+			{
+				final Bundle sceneState = new Bundle();
+				((StatefulScene) scene).onSaveState(sceneState);
+				record.savedState = sceneState;
+			}
+			if(scene instanceof PersistentScene) record.snapshotState = writeSnapshotState((PersistentScene) scene);
+			if(scene.getView().getParent() == null) releasedBytes += SceneFootprint.estimateBitmapBytes(scene.getView());
+			record.scene = null;
+		}
+		return releasedBytes;
+	}
+
+	private static @Nullable ByteBuffer writeSnapshotState(PersistentScene scene)
+	{
+		final ByteArrayOutputStream stateBytes = new ByteArrayOutputStream();
+		try
+		{
+			final DataOutputStream out = new DataOutputStream(stateBytes);
+			scene.onWriteSnapshot(out);
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			// Writing to memory does not fail by itself, so the scene refused to write its state.
+			return null;
+		}
+		return ByteBuffer.wrap(stateBytes.toByteArray());
+	}
+
+	/**
+	 * Call {@link TrimmableScene#onTrimMemory(int)} of all materialized trimmable scenes in the back stack.
+	 * @param level The trim level.
+	 */
+	final void dispatchTrimMemory(int level)
+	{
+		final int sceneCount = sceneStack.size();
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			final S scene = sceneStack.get(i).scene;
+			if(scene instanceof TrimmableScene) ((TrimmableScene) scene).onTrimMemory(level);
+		}
+	}
+
+	/**
+	 * Remove all entries but the default one and discard the saved state of the default entry, so that the back stack
+	 * holds as little as possible. Unlike {@link #popScene()}, this works while navigation is locked, so it must only be
+	 * called on a navigator whose scenes are not shown.
+	 */
+	final void trimSceneStack()
+	{
+		checkIsDefaultScenePushed();
+		for(int i = sceneStack.size() - 1; i >= MIN_SCENE_STACK_COUNT; --i)
+		{
+			recycleRecord(sceneStack.remove(i));
+		}
+		sceneStack.get(0).savedState = null;
+		sceneStack.get(0).snapshotState = null;
 	}
 
 	/**
@@ -38,7 +458,7 @@ abstract class SceneManager<S extends Scene>
 
 	/**
 	 * Pop a scene at the top of the stack. Since by design there must be at least one scene in the back stack, this method will not pop
-	 * the default scene. Use {@link #replaceCurrentScene(Scene)} instead when developers want to set the default scene.
+	 * the default scene. Use {@link #replaceCurrentScene(Scene, Object)} instead when developers want to set the default scene.
 	 * @return <code>true</code> when it successfully pops a scene, <code>false</code> when it cannot pop a scene (i.e. the current scene
 	 * is the default scene.
 	 * @throws IllegalStateException When navigation is locked. See {@link #isLocked()}.
@@ -47,19 +467,38 @@ abstract class SceneManager<S extends Scene>
 	{
 		validate();
 		if(sceneStack.size() <= MIN_SCENE_STACK_COUNT) return false;
-		sceneStack.remove(sceneStack.size() - 1);
+		final SceneRecord<S> record = sceneStack.remove(sceneStack.size() - 1);
+		// The popped scene may still read its argument when it is hidden afterwards.
+		releaseArgument(record.argument);
+		record.argument = null;
+		recycleRecord(record);
 		return true;
 	}
 
 	/**
 	 * Push a scene.
 	 * @param scene The scene to push.
+	 * @param argument The argument supplied to the scene, kept so that the scene can be materialized again after
+	 *                 {@link #dematerializeScenes()}.
 	 * @throws IllegalStateException When navigation is locked. See {@link #isLocked()}.
 	 */
-	final void pushScene(S scene)
+	final void pushScene(S scene, @Nullable Object argument)
 	{
 		validate();
-		sceneStack.add(scene);
+		sceneStack.add(obtainRecord(scene.getSceneId(), scene, argument));
+	}
+
+	/**
+	 * Push an entry which is not materialized. Its scene will be created by {@link #onMaterializeScene(int, Object)}
+	 * when it is needed.
+	 * @param sceneId The scene id of the entry.
+	 * @param argument The argument which will be supplied to the scene when it is materialized.
+	 * @throws IllegalStateException When navigation is locked. See {@link #isLocked()}.
+	 */
+	final void pushScene(int sceneId, @Nullable Object argument)
+	{
+		validate();
+		sceneStack.add(obtainRecord(sceneId, null, argument));
 	}
 
 	/**
@@ -67,11 +506,78 @@ abstract class SceneManager<S extends Scene>
 	 * replace the current scene.
 	 * @throws IllegalStateException When navigation is locked. See {@link #isLocked()}.
 	 */
-	final void replaceCurrentScene(S scene)
+	final void replaceCurrentScene(S scene, @Nullable Object argument)
 	{
 		// Assume there is always at least one scene.
 		validate();
-		sceneStack.set(sceneStack.size() - 1, scene);
+		final SceneRecord<S> record = sceneStack.get(sceneStack.size() - 1);
+		if(record.argument != argument) releaseArgument(record.argument);
+		record.sceneId = scene.getSceneId();
+		record.scene = scene;
+		record.argument = argument;
+		record.savedState = null;
+		record.snapshotState = null;
+	}
+
+	/**
+	 * Switch the current entry in scene stack with an entry which is not materialized. See {@link #pushScene(int, Object)}.
+	 * @throws IllegalStateException When navigation is locked. See {@link #isLocked()}.
+	 */
+	final void replaceCurrentScene(int sceneId, @Nullable Object argument)
+	{
+		validate();
+		final SceneRecord<S> record = sceneStack.get(sceneStack.size() - 1);
+		if(record.argument != argument) releaseArgument(record.argument);
+		record.sceneId = sceneId;
+		record.scene = null;
+		record.argument = argument;
+		record.savedState = null;
+		record.snapshotState = null;
+	}
+
+	/**
+	 * Obtain a cleared {@link SceneArgument} from the pool of this navigator. Pass it to exactly one navigation command;
+	 * it is recycled into the pool when the back stack entry it is given to is removed.
+	 * @return The argument.
+	 */
+	final public @NonNull SceneArgument obtainArgument()
+	{
+		final int recycledArgumentCount = recycledArguments.size();
+		return recycledArgumentCount > 0 ? recycledArguments.remove(recycledArgumentCount - 1) : new SceneArgument();
+	}
+
+	/**
+	 * Recycle the given argument into the pool if it is a {@link SceneArgument}.
+	 * @param argument The argument, which must not be referenced by the back stack or by any scene.
+	 */
+	final void recycleArgument(@Nullable Object argument)
+	{
+		if(!(argument instanceof SceneArgument)) return;
+		((SceneArgument) argument).clear();
+		recycledArguments.add((SceneArgument) argument);
+	}
+
+	/**
+	 * Hold the argument of an entry removed from the back stack until its scene has been hidden.
+	 */
+	private void releaseArgument(Object argument)
+	{
+		if(argument instanceof SceneArgument) releasedArguments.add((SceneArgument) argument);
+	}
+
+	/**
+	 * Recycle the arguments of entries removed from the back stack by {@link #popScene()} and
+	 * {@link #replaceCurrentScene(Scene, Object)}. Navigation commands call this after the hide callbacks of the removed
+	 * scenes, so that a scene can still read its argument in {@link Scene#onHide()}.
+	 */
+	final void recycleReleasedArguments()
+	{
+		final int releasedArgumentCount = releasedArguments.size();
+		for(int i = 0; i < releasedArgumentCount; ++i)
+		{
+			recycleArgument(releasedArguments.get(i));
+		}
+		releasedArguments.clear();
 	}
 
 	/**
@@ -110,14 +616,209 @@ abstract class SceneManager<S extends Scene>
 	 * provided for the sake of flexibility and completeness.
 	 * @return The current scene.
 	 */
-	final public @NonNull S getCurrentScene() { return sceneStack.get(sceneStack.size() - 1); }
+	final public @NonNull S getCurrentScene() { return materialize(sceneStack.get(sceneStack.size() - 1)); }
+
+	/**
+	 * Get the scene at the given index of the back stack without materializing it.
+	 * @param stackIndex The stack index of the scene, <code>0</code> being the default scene.
+	 * @return The scene, or <code>null</code> if the entry is not materialized.
+	 */
+	final @Nullable S peekStackScene(int stackIndex) { return sceneStack.get(stackIndex).scene; }
+
+	/**
+	 * Get the scene at the given index of the back stack, materializing it if needed.
+	 * @param stackIndex The stack index of the scene, <code>0</code> being the default scene.
+	 * @return The scene.
+	 */
+	final @NonNull S getStackScene(int stackIndex) { return materialize(sceneStack.get(stackIndex)); }
+
+	/**
+	 * Get the scene id of the entry at the given index of the back stack, regardless of whether it is materialized.
+	 * @param stackIndex The stack index of the entry, <code>0</code> being the default scene.
+	 * @return The scene id.
+	 */
+	final int getStackSceneId(int stackIndex) { return sceneStack.get(stackIndex).sceneId; }
+
+	/**
+	 * Check whether the given scene is in the back stack, including the current scene. Scene providers which
+	 * release scenes, such as {@link LruSceneProvider}, use this to make sure scenes that are still reachable by
+	 * going back are never released.
+	 * @param scene The scene to check.
+	 * @return <code>true</code> if the scene is in the back stack, <code>false</code> otherwise.
+	 */
+	final public boolean isInSceneStack(@NonNull Scene scene)
+	{
+		final int sceneCount = sceneStack.size();
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			if(sceneStack.get(i).scene == scene) return true;
+		}
+		return false;
+	}
 
 	/**
 	 * Set whether navigation is locked. When navigation is locked, all navigation methods should return immediately.
+	 * Unlocking navigation replays commands queued while it was locked. See {@link #setIsQueueingCommands(boolean)}.
 	 * @param isLocked Passing <code>true</code> will lock navigation, <code>false</code> will unlock
 	 *                 navigation.
 	 */
-	final public void setIsLocked(boolean isLocked) { this.isLocked = isLocked; }
+	final public void setIsLocked(boolean isLocked)
+	{
+		this.isLocked = isLocked;
+		++lockChangeCount;
+		if(!isLocked) replayCommands();
+	}
+
+	/**
+	 * @return The number of times navigation has been locked or unlocked, so that code which locks navigation can tell
+	 * whether anyone else has locked or unlocked it since.
+	 */
+	final int getLockChangeCount() { return lockChangeCount; }
+
+	/**
+	 * Set whether navigation commands issued while navigation is locked are queued and replayed when navigation is
+	 * unlocked, instead of being dropped. Disabling queueing discards queued commands.
+	 * @param isQueueingCommands Passing <code>true</code> will queue commands, <code>false</code> will drop them.
+	 */
+	final public void setIsQueueingCommands(boolean isQueueingCommands)
+	{
+		this.isQueueingCommands = isQueueingCommands;
+		if(isQueueingCommands) return;
+		while(!commandQueue.isEmpty())
+		{
+			discardCommand(commandQueue.pollLast());
+		}
+	}
+
+	final public boolean isQueueingCommands() { return isQueueingCommands; }
+
+	/**
+	 * @return The number of queued navigation commands.
+	 */
+	final public int getQueuedCommandCount() { return commandQueue.size(); }
+
+	/**
+	 * Queue a navigation command issued while navigation is locked, coalescing it with queued commands. Nothing happens
+	 * if command queueing is disabled.
+	 * @param command One of the <code>COMMAND_*</code> constants.
+	 * @param sceneId The scene id of the command, ignored by back commands.
+	 * @param argument The argument of the command, ignored by back commands.
+	 */
+	final void queueCommand(int command, int sceneId, @Nullable Object argument)
+	{
+		if(!isQueueingCommands)
+		{
+			onDiscardCommand(command, argument);
+			return;
+		}
+
+		final QueuedCommand lastCommand = commandQueue.peekLast();
+		switch(coalesceCommand(lastCommand == null ? -1 : lastCommand.command, command))
+		{
+			case COALESCE_CANCEL:
+				discardCommand(commandQueue.pollLast());
+				return;
+			case COALESCE_REPLACE_LAST:
+				if(lastCommand.argument != argument) onDiscardCommand(command, lastCommand.argument);
+				lastCommand.sceneId = sceneId;
+				lastCommand.argument = argument;
+				return;
+			case COALESCE_DISCARD_ALL:
+				while(!commandQueue.isEmpty())
+				{
+					discardCommand(commandQueue.pollLast());
+				}
+				break;
+		}
+
+		final int recycledCommandCount = recycledCommands.size();
+		final QueuedCommand queuedCommand = recycledCommandCount > 0 ? recycledCommands.remove(recycledCommandCount - 1) : new QueuedCommand();
+		queuedCommand.command = command;
+		queuedCommand.sceneId = sceneId;
+		queuedCommand.argument = argument;
+		commandQueue.addLast(queuedCommand);
+	}
+
+	/**
+	 * Decide how a navigation command coalesces with the pending command issued before it. These rules are shared by
+	 * queued commands and {@link NavigationMailbox}: a back command cancels a go-to command, consecutive replace or
+	 * jump-to commands collapse to the last one, and a reset command discards all commands before it.
+	 * @param lastCommand The last pending command, or <code>-1</code> if there is none.
+	 * @param command The new command.
+	 * @return {@link #COALESCE_APPEND} if the new command is appended, {@link #COALESCE_CANCEL} if both the last and
+	 * the new command are dropped, {@link #COALESCE_REPLACE_LAST} if the new command replaces the last one, or
+	 * {@link #COALESCE_DISCARD_ALL} if all pending commands are discarded before the new command is appended.
+	 */
+	static int coalesceCommand(int lastCommand, int command)
+	{
+		if(command == COMMAND_RESET) return COALESCE_DISCARD_ALL;
+		if(command == COMMAND_BACK && lastCommand == COMMAND_GO_TO) return COALESCE_CANCEL;
+		if((command == COMMAND_REPLACE || command == COMMAND_JUMP_TO) && lastCommand == command) return COALESCE_REPLACE_LAST;
+		return COALESCE_APPEND;
+	}
+
+	/**
+	 * Replay a queued navigation command. This is called when navigation is unlocked.
+	 * @param command One of the <code>COMMAND_*</code> constants.
+	 * @param sceneId The scene id of the command.
+	 * @param argument The argument of the command.
+	 */
+	abstract void onReplayCommand(int command, int sceneId, @Nullable Object argument);
+
+	/**
+	 * Called when a navigation command is dropped or coalesced away without being replayed, so that its argument can
+	 * be recycled. Default implementation recycles the argument if it is a {@link SceneArgument}.
+	 * @param command One of the <code>COMMAND_*</code> constants.
+	 * @param argument The argument of the command.
+	 */
+	void onDiscardCommand(int command, @Nullable Object argument) { recycleArgument(argument); }
+
+	/**
+	 * Replay queued commands until the queue is empty or navigation is locked again, for example by an animating scene
+	 * handler, in which case the remaining commands are replayed when navigation is unlocked again.
+	 */
+	final void replayCommands()
+	{
+		if(isReplayingCommands) return;
+		isReplayingCommands = true;
+		try
+		{
+			while(!isLocked && !commandQueue.isEmpty())
+			{
+				final QueuedCommand queuedCommand = commandQueue.pollFirst();
+				final int command = queuedCommand.command;
+				final int sceneId = queuedCommand.sceneId;
+				final Object argument = queuedCommand.argument;
+				recycleCommand(queuedCommand);
+				onReplayCommand(command, sceneId, argument);
+			}
+		}
+		finally
+		{
+			isReplayingCommands = false;
+		}
+	}
+
+	/**
+	 * Unlock navigation without replaying queued commands, so that the caller can issue a command before them.
+	 */
+	final void unlockWithoutReplaying()
+	{
+		this.isLocked = false;
+		++lockChangeCount;
+	}
+
+	private void discardCommand(QueuedCommand queuedCommand)
+	{
+		onDiscardCommand(queuedCommand.command, queuedCommand.argument);
+		recycleCommand(queuedCommand);
+	}
+
+	private void recycleCommand(QueuedCommand queuedCommand)
+	{
+		queuedCommand.argument = null;
+		recycledCommands.add(queuedCommand);
+	}
 
 	/**
 	 * Call the current scene's {@link Scene#onHide()} method. This is meant to be used in either
@@ -138,4 +839,47 @@ abstract class SceneManager<S extends Scene>
 		final S scene = getCurrentScene();
 		scene.onShow();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Set a listener which receives timings of every navigation command. See {@link TransitionListener}.
+	 * @param transitionListener The listener, or <code>null</code> to stop timing.
+	 */
+	final public void setTransitionListener(@Nullable TransitionListener transitionListener)
+	{
+		this.transitionListener = transitionListener;
+		if(transitionListener != null && firstFrameCallback == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+		{
+			firstFrameCallback = new FirstFrameCallback();
+		}
+	}
+
+	/**
+	 * Mark the start of a navigation command. Timing methods do nothing when there is no transition listener.
+	 */
+	final void beginTiming() { if(transitionListener != null) timingStartNanos = System.nanoTime(); }
+
+	/**
+	 * Mark the end of getting scenes of a navigation command.
+	 */
+	final void markScenesObtained() { if(transitionListener != null) scenesObtainedNanos = System.nanoTime(); }
+
+	/**
+	 * Mark the end of scene callbacks of a navigation command.
+	 */
+	final void markSceneCallbacksDone() { if(transitionListener != null) sceneCallbacksDoneNanos = System.nanoTime(); }
+
+	/**
+	 * Mark the end of a navigation command and report its timings.
+	 * @param navigation One of the <code>TransitionListener.NAVIGATION_*</code> constants.
+	 */
+	final void endTiming(int navigation, int fromSceneId, int toSceneId)
+	{
+		final TransitionListener listener = transitionListener;
+		if(listener == null) return;
+
+		final long endNanos = System.nanoTime();
+		listener.onTransition(navigation, fromSceneId, toSceneId, scenesObtainedNanos - timingStartNanos,
+				sceneCallbacksDoneNanos - scenesObtainedNanos, endNanos - sceneCallbacksDoneNanos);
+		if(firstFrameCallback != null) firstFrameCallback.schedule(navigation, toSceneId, endNanos);
+	}
+}
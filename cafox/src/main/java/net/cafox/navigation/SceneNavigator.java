@@ -1,7 +1,19 @@
 package net.cafox.navigation;
 
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 /**
  * A class that encapsulates navigation command and delegates actual command handling to {@link Scene} and
@@ -23,6 +35,10 @@ import android.support.annotation.Nullable;
  * Suppose these constants are defined in a class <code>MainScene</code>. To go to scene A, one would then make
  * the following call: <br>
  * <code>sceneNavigator.goTo(MainScene.SCENE_A, null);</code>
+ * <p>
+ * When the scene handler is an {@link AsyncSceneHandler}, scenes can be created ahead of time on a background
+ * inflater thread by {@link #prepare(int)} and {@link #goToWhenReady(int, Object)}. A {@link ScenePredictor} set by
+ * {@link #setScenePredictor(ScenePredictor)} prefetches the most likely next scenes while the main thread is idle.
  * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
  * @see Scene
  * @see SceneHandler
@@ -35,6 +51,9 @@ public class SceneNavigator<S extends Scene> extends SceneManager<S>
 	 * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.<br>
 	 *           <b>NOTE:</b> This must be the same class as that passed to the <code>SceneNavigator</code> with which
 	 *           it works.
+	 * <p>
+	 * The back stack has already been updated when any transition callback is called, so a handler may lock navigation
+	 * by {@link SceneManager#setIsLocked(boolean)} while it animates, and unlock it when the animation ends.
 	 */
 	public interface SceneHandler<S extends Scene>
 	{
@@ -92,6 +111,191 @@ public class SceneNavigator<S extends Scene> extends SceneManager<S>
 		void onBack(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene);
 	}
 
+	/**
+	 * A scene handler which is able to create scenes off the main thread. See {@link #prepare(int)}.
+	 * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+	 */
+	public interface AsyncSceneHandler<S extends Scene> extends SceneHandler<S>
+	{
+		/**
+		 * Create a scene that matches the given scene id. This is called on the background inflater thread, so
+		 * implementations must only create and inflate the view hierarchy of the scene and must not attach it to any
+		 * view that is attached to a window.
+		 * @param sceneId The scene id of the scene.
+		 * @return The newly created scene.
+		 */
+		@NonNull S createScene(int sceneId);
+
+		/**
+		 * Called on the main thread while it is idle, after the scene is created by {@link #createScene(int)}.
+		 * Implementations typically measure the view of the scene here, for example by
+		 * {@link AllocateSceneProvider#measureScene(Scene)}, so that showing it later does not measure it again.
+		 * @param scene The created scene.
+		 */
+		void onScenePrepared(@NonNull S scene);
+	}
+
+	/**
+	 * Prepares a scene by creating it on the inflater thread, then finishing it on the main thread while it is idle.
+	 */
+	private class PrepareTask implements Runnable, MessageQueue.IdleHandler
+	{
+		private final AsyncSceneHandler<S> asyncSceneHandler;
+		private final int sceneId;
+		private S scene;
+		private RuntimeException exception;
+		private boolean isCreated;
+
+		PrepareTask(AsyncSceneHandler<S> asyncSceneHandler, int sceneId)
+		{
+			this.asyncSceneHandler = asyncSceneHandler;
+			this.sceneId = sceneId;
+		}
+
+		@Override
+		public void run()
+		{
+			if(!isCreated)
+			{
+				// Inflater thread.
+				try { scene = asyncSceneHandler.createScene(sceneId); }
+				catch(RuntimeException e) { exception = e; }
+				isCreated = true;
+				mainHandler.post(this);
+				return;
+			}
+
+			// Main thread.
+			if(exception != null)
+			{
+				finishPreparing(sceneId, null);
+				throw exception;
+			}
+			Looper.myQueue().addIdleHandler(this);
+		}
+
+		@Override
+		public boolean queueIdle()
+		{
+			asyncSceneHandler.onScenePrepared(scene);
+			finishPreparing(sceneId, scene);
+			return false;
+		}
+	}
+
+	/**
+	 * A batch of navigation commands which is committed as a single navigation. Only the final scene of the transaction
+	 * is shown, through a single scene handler transition; intermediate scenes are pushed to the back stack without being
+	 * created, and are created when going back to them. Obtain a transaction by {@link #beginTransaction()}.
+	 */
+	final public class Transaction
+	{
+		private int[] commands = new int[4];
+		private int[] sceneIds = new int[4];
+		private Object[] arguments = new Object[4];
+		private int commandCount;
+		private int committedCommandCount;
+
+		private Transaction() {}
+
+		/**
+		 * Add a go-to command. See {@link SceneNavigator#goTo(int, Object)}.
+		 * @param sceneId The scene id of the destination scene.
+		 * @param argument Optional argument supplied to the scene to go.
+		 * @return This transaction.
+		 */
+		public @NonNull Transaction goTo(int sceneId, @Nullable Object argument)
+		{
+			add(COMMAND_GO_TO, sceneId, argument);
+			return this;
+		}
+
+		/**
+		 * Add a replace command. See {@link SceneNavigator#replace(int, Object)}.
+		 * @param sceneId The scene id of the scene which will replace the current scene of the transaction.
+		 * @param argument Optional argument supplied to the scene.
+		 * @return This transaction.
+		 */
+		public @NonNull Transaction replace(int sceneId, @Nullable Object argument)
+		{
+			add(COMMAND_REPLACE, sceneId, argument);
+			return this;
+		}
+
+		private void add(int command, int sceneId, Object argument)
+		{
+			if(commandCount == commands.length)
+			{
+				final int capacity = commandCount * 2;
+				final int[] newCommands = new int[capacity];
+				final int[] newSceneIds = new int[capacity];
+				final Object[] newArguments = new Object[capacity];
+				System.arraycopy(commands, 0, newCommands, 0, commandCount);
+				System.arraycopy(sceneIds, 0, newSceneIds, 0, commandCount);
+				System.arraycopy(arguments, 0, newArguments, 0, commandCount);
+				commands = newCommands;
+				sceneIds = newSceneIds;
+				arguments = newArguments;
+			}
+			commands[commandCount] = command;
+			sceneIds[commandCount] = sceneId;
+			arguments[commandCount] = argument;
+			++commandCount;
+		}
+
+		/**
+		 * Commit the transaction. Nothing happens if the transaction is empty. If navigation is locked, the transaction
+		 * is queued like any other navigation command, see {@link SceneManager#setIsQueueingCommands(boolean)}.
+		 * <p>
+		 * The current scene is hidden and the final scene is shown by {@link SceneHandler#onGoTo(int, S, int, S)} if the
+		 * transaction pushes any scene, or by {@link SceneHandler#onReplace(int, S, int, S)} otherwise.
+		 * {@link Scene#onHide()}, {@link Scene#onSetArgument(Object)} and {@link Scene#onShow()} are called only for
+		 * the current scene and the final scene. A transaction can be committed only once.
+		 */
+		public void commit()
+		{
+			if(commandCount < 0) throw new IllegalStateException("attempt to commit a transaction which has already been committed");
+			committedCommandCount = commandCount;
+			commandCount = -1;
+			if(committedCommandCount == 0) return;
+			if(isLocked())
+			{
+				queueCommand(COMMAND_COMMIT, NO_SCENE_ID, this);
+				return;
+			}
+			commitTransaction(commands, sceneIds, arguments, committedCommandCount);
+		}
+
+		private void replay() { commitTransaction(commands, sceneIds, arguments, committedCommandCount); }
+
+		/**
+		 * Recycle the arguments of a queued transaction which is dropped without being committed.
+		 */
+		private void discard()
+		{
+			for(int i = 0; i < committedCommandCount; ++i)
+			{
+				recycleArgument(arguments[i]);
+				arguments[i] = null;
+			}
+		}
+	}
+
+	private final static int NO_SCENE_ID = -1;
+
+	private static Handler inflaterHandler;
+
+	private static synchronized Handler getInflaterHandler()
+	{
+		if(inflaterHandler == null)
+		{
+			final HandlerThread inflaterThread = new HandlerThread("SceneInflater");
+			inflaterThread.start();
+			inflaterHandler = new Handler(inflaterThread.getLooper());
+		}
+		return inflaterHandler;
+	}
+
 	/**
 	 * A simple implementation of scene handler which simply hide and show scenes without animation.
 	 * @param <S>
@@ -148,17 +352,128 @@ public class SceneNavigator<S extends Scene> extends SceneManager<S>
 	}
 
 	private SceneHandler<S> sceneHandler;
+	private final ArrayList<S> resetHideScenes = new ArrayList<>();
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final SparseArray<S> preparedScenes = new SparseArray<>();
+	private boolean isPreparing;
+	private int preparingSceneId = NO_SCENE_ID;
+	private int prepareLockChangeCount;
+	private int pendingSceneId = NO_SCENE_ID;
+	private Object pendingArgument;
+	private ScenePredictor scenePredictor;
+	private boolean isWarmingSceneProvider;
+	private final SparseBooleanArray prefetchedSceneIds = new SparseBooleanArray();
+	private int[] predictedSceneIds;
+	private int predictedSceneCount;
+	private int prefetchPosition;
+	private boolean isPrefetchScheduled;
+	private final MessageQueue.IdleHandler prefetchIdleHandler = new MessageQueue.IdleHandler()
+	{
+		@Override
+		public boolean queueIdle()
+		{
+			// Prefetch at most one scene per idle callback so that a pending frame is never delayed by more than one scene.
+			while(prefetchPosition < predictedSceneCount)
+			{
+				if(prefetchScene(predictedSceneIds[prefetchPosition++])) break;
+			}
+
+			isPrefetchScheduled = prefetchPosition < predictedSceneCount;
+			return isPrefetchScheduled;
+		}
+	};
 
 	final public void showDefaultScene(@NonNull SceneHandler<S> sceneHandler, int defaultSceneId)
 	{
 		if(this.sceneHandler != null) throw new IllegalStateException("attempt to show default scene when it has already been shown");
 		this.sceneHandler = sceneHandler;
 
+		beginTiming();
 		final S defaultScene = sceneHandler.getScene(defaultSceneId);
+		markScenesObtained();
 //		defaultScene.onShow();	TODO: Temporary bug fix.
+		markSceneCallbacksDone();
 		sceneHandler.onShowDefaultScene(defaultScene);
 
 		pushDefaultScene(defaultScene);
+		endTiming(TransitionListener.NAVIGATION_SHOW_DEFAULT, defaultSceneId, defaultSceneId);
+	}
+
+	/**
+	 * Show the scenes saved by {@link #saveState(Bundle)} if the given bundle contains them, otherwise show the default
+	 * scene as {@link #showDefaultScene(SceneHandler, int)} does. When the back stack is restored, only its current
+	 * scene is created and shown by {@link SceneHandler#onShowDefaultScene(Scene)}, so the cost of restoring does not
+	 * depend on the depth of the back stack. Other scenes are created when going back to them.
+	 * <p>
+	 * Arguments are not saved, so restored scenes receive a <code>null</code> argument through
+	 * {@link Scene#onSetArgument(Object)}, followed by {@link StatefulScene#onRestoreState(Bundle)} if they are
+	 * stateful.
+	 * @param sceneHandler The scene handler.
+	 * @param defaultSceneId The scene id of the default scene, used when the bundle does not contain saved scenes.
+	 * @param savedInstanceState The bundle which may contain saved scenes, typically the saved instance state of an
+	 *                           activity.
+	 */
+	final public void showDefaultScene(@NonNull SceneHandler<S> sceneHandler, int defaultSceneId, @Nullable Bundle savedInstanceState)
+	{
+		if(this.sceneHandler != null) throw new IllegalStateException("attempt to show default scene when it has already been shown");
+		if(!restoreSceneStack(savedInstanceState))
+		{
+			showDefaultScene(sceneHandler, defaultSceneId);
+			return;
+		}
+		showRestoredScene(sceneHandler);
+	}
+
+	/**
+	 * Show the scenes written by {@link #saveSnapshot(File)} if the given file contains them, otherwise show the default
+	 * scene as {@link #showDefaultScene(SceneHandler, int)} does. This is meant for cold starts, where there is no saved
+	 * instance state; prefer {@link #showDefaultScene(SceneHandler, int, Bundle)} when there is one.
+	 * <p>
+	 * The file is memory-mapped rather than read, and entries are pushed without being materialized, so the cost of
+	 * restoring is a few reads per entry plus creating the current scene, which is shown by
+	 * {@link SceneHandler#onShowDefaultScene(Scene)}. Other scenes are created when going back to them. Restored scenes
+	 * receive a <code>null</code> argument through {@link Scene#onSetArgument(Object)}, followed by
+	 * {@link PersistentScene#onReadSnapshot(ByteBuffer)} if they are persistent.
+	 * <p>
+	 * A file which is missing, unreadable, corrupted, or written by another version of the format is ignored, and so is
+	 * a file which contains a scene id out of the range of the given scene count. Scene ids are otherwise not checked,
+	 * so delete the file when the meaning of scene ids changes between app versions.
+	 * @param sceneHandler The scene handler.
+	 * @param defaultSceneId The scene id of the default scene, used when the file does not contain saved scenes.
+	 * @param snapshotFile The file written by {@link #saveSnapshot(File)}.
+	 * @param sceneCount The number of scenes, typically {@link SceneProvider#getSceneCount()}. Valid scene ids range
+	 *                   from <code>0</code> to <code>sceneCount - 1</code>.
+	 */
+	final public void showDefaultScene(@NonNull SceneHandler<S> sceneHandler, int defaultSceneId, @NonNull File snapshotFile,
+									   int sceneCount)
+	{
+		if(this.sceneHandler != null) throw new IllegalStateException("attempt to show default scene when it has already been shown");
+		ByteBuffer snapshot;
+		try
+		{
+			snapshot = NavigationSnapshot.map(snapshotFile);
+		}
+		catch(IOException e)
+		{
+			snapshot = null;
+		}
+		if(snapshot == null || !restoreSceneStack(snapshot, sceneCount))
+		{
+			showDefaultScene(sceneHandler, defaultSceneId);
+			return;
+		}
+		showRestoredScene(sceneHandler);
+	}
+
+	private void showRestoredScene(SceneHandler<S> sceneHandler)
+	{
+		this.sceneHandler = sceneHandler;
+		beginTiming();
+		final S currentScene = getCurrentScene();
+		markScenesObtained();
+		markSceneCallbacksDone();
+		sceneHandler.onShowDefaultScene(currentScene);
+		endTiming(TransitionListener.NAVIGATION_SHOW_DEFAULT, currentScene.getSceneId(), currentScene.getSceneId());
 	}
 
 	/**
@@ -180,26 +495,49 @@ public class SceneNavigator<S extends Scene> extends SceneManager<S>
 	 */
 	final public void reset(int sceneId, @Nullable Object argument)
 	{
-		if(isLocked()) return;
+		if(isLocked())
+		{
+			queueCommand(COMMAND_RESET, sceneId, argument);
+			return;
+		}
 
+		beginTiming();
 		final int incomingSceneStackIndex = 0;
-		final S incomingScene = sceneHandler.getScene(sceneId);
+		final S incomingScene = obtainScene(sceneId);
 		final int hideSceneCount = getSceneStackCount();
 		final int currentSceneStackIndex = hideSceneCount - 1;
+		final int hideSceneId = getCurrentScene().getSceneId();
+		markScenesObtained();
+
+		// Modify the scene stack before calling the scene handler, which may lock navigation. Entries which are not
+		// materialized have never been shown, so they are not hidden.
+		resetHideScenes.clear();
 		for(int i = currentSceneStackIndex; i >= 0; --i)
 		{
-			final S currentScene = getCurrentScene();
-			currentScene.onHide();
-			sceneHandler.onResetHide(incomingSceneStackIndex, incomingScene, i, currentScene, hideSceneCount);
+			resetHideScenes.add(peekStackScene(i));
 
 			// Only pop non-default scene.
 			if(i > 0) popScene();
-			else replaceCurrentScene(incomingScene);
+			else replaceCurrentScene(incomingScene, argument);
 		}
 
+		for(int i = currentSceneStackIndex; i >= 0; --i)
+		{
+			final S hideScene = resetHideScenes.get(currentSceneStackIndex - i);
+			if(hideScene == null) continue;
+			hideScene.onHide();
+			sceneHandler.onResetHide(incomingSceneStackIndex, incomingScene, i, hideScene, hideSceneCount);
+		}
+		resetHideScenes.clear();
+		recycleReleasedArguments();
+
 		incomingScene.onSetArgument(argument);
 		incomingScene.onShow();
+		markSceneCallbacksDone();
 		sceneHandler.onResetShow(incomingSceneStackIndex, incomingScene, hideSceneCount);
+		endTiming(TransitionListener.NAVIGATION_RESET, hideSceneId, sceneId);
+
+		onNavigated(hideSceneId, sceneId);
 	}
 
 	/**
@@ -220,18 +558,30 @@ public class SceneNavigator<S extends Scene> extends SceneManager<S>
 	 */
 	final public void replace(int sceneId, @Nullable Object argument)
 	{
-		if(isLocked()) return;
+		if(isLocked())
+		{
+			queueCommand(COMMAND_REPLACE, sceneId, argument);
+			return;
+		}
 
+		beginTiming();
 		final int currentSceneStackIndex = getSceneStackCount() - 1;
-		final S incomingScene = sceneHandler.getScene(sceneId);
+		final S incomingScene = obtainScene(sceneId);
 		final S currentScene = getCurrentScene();
+		markScenesObtained();
+
+		// Modify the scene stack before calling the scene handler, which may lock navigation.
+		replaceCurrentScene(incomingScene, argument);
 
 		currentScene.onHide();
 		incomingScene.onSetArgument(argument);
 		incomingScene.onShow();
+		markSceneCallbacksDone();
 		sceneHandler.onReplace(currentSceneStackIndex, incomingScene, currentSceneStackIndex, currentScene);
+		recycleReleasedArguments();
+		endTiming(TransitionListener.NAVIGATION_REPLACE, currentScene.getSceneId(), sceneId);
 
-		replaceCurrentScene(incomingScene);
+		onNavigated(currentScene.getSceneId(), sceneId);
 	}
 
 	/**
@@ -252,21 +602,56 @@ public class SceneNavigator<S extends Scene> extends SceneManager<S>
 	 */
 	final public void goTo(int sceneId, Object argument)
 	{
-		if(isLocked()) return;
+		if(isLocked())
+		{
+			queueCommand(COMMAND_GO_TO, sceneId, argument);
+			return;
+		}
 
+		beginTiming();
 		final int incomingSceneStackIndex = getSceneStackCount();
 		final int currentSceneStackIndex = incomingSceneStackIndex - 1;
-		final S incomingScene = sceneHandler.getScene(sceneId);
+		final S incomingScene = obtainScene(sceneId);
 		final S currentScene = getCurrentScene();
+		markScenesObtained();
+
+		// Modify the scene stack before calling the scene handler, which may lock navigation.
+		pushScene(incomingScene, argument);
 
 		currentScene.onHide();
 		incomingScene.onSetArgument(argument);
 		incomingScene.onShow();
+		markSceneCallbacksDone();
 		sceneHandler.onGoTo(incomingSceneStackIndex, incomingScene, currentSceneStackIndex, currentScene);
+		endTiming(TransitionListener.NAVIGATION_GO_TO, currentScene.getSceneId(), sceneId);
 
-		pushScene(incomingScene);
+		onNavigated(currentScene.getSceneId(), sceneId);
 	}
 
+	/**
+	 * Go to the scene with the given scene id, supplying a {@link SceneArgument} whose long slot holds the given id,
+	 * without allocating. See {@link #goTo(int, Object)}.
+	 * @param sceneId The scene id of the destination scene.
+	 * @param id The id supplied through {@link SceneArgument#getLong()}.
+	 */
+	final public void goToWithId(int sceneId, long id) { goTo(sceneId, obtainArgument().setLong(id)); }
+
+	/**
+	 * Replace the current scene, supplying a {@link SceneArgument} whose long slot holds the given id, without
+	 * allocating. See {@link #replace(int, Object)}.
+	 * @param sceneId The scene id of the scene to replace with.
+	 * @param id The id supplied through {@link SceneArgument#getLong()}.
+	 */
+	final public void replaceWithId(int sceneId, long id) { replace(sceneId, obtainArgument().setLong(id)); }
+
+	/**
+	 * Reset the default scene, supplying a {@link SceneArgument} whose long slot holds the given id, without
+	 * allocating. See {@link #reset(int, Object)}.
+	 * @param sceneId The scene id of the default scene.
+	 * @param id The id supplied through {@link SceneArgument#getLong()}.
+	 */
+	final public void resetWithId(int sceneId, long id) { reset(sceneId, obtainArgument().setLong(id)); }
+
 	/**
 	 * Issue a back command. This method will return immediately when the back command is consumed.
 	 * <p>
@@ -287,18 +672,382 @@ public class SceneNavigator<S extends Scene> extends SceneManager<S>
 	 */
 	final public boolean back()
 	{
-		if(isLocked()) return true;
+		if(isLocked())
+		{
+			queueCommand(COMMAND_BACK, 0, null);
+			return true;
+		}
 
 		final S currentScene = getCurrentScene();
 		if(currentScene.onBack()) return true;
+		beginTiming();
 		final int currentSceneStackIndex = getSceneStackCount() - 1;
 		if(!popScene()) return false;
 
 		final int previousSceneStackIndex = currentSceneStackIndex - 1;
 		final S previousScene = getCurrentScene();
+		markScenesObtained();
 		currentScene.onHide();
 		previousScene.onShow();
+		markSceneCallbacksDone();
 		sceneHandler.onBack(previousSceneStackIndex, previousScene, currentSceneStackIndex, currentScene);
+		recycleReleasedArguments();
+		endTiming(TransitionListener.NAVIGATION_BACK, currentScene.getSceneId(), previousScene.getSceneId());
+
+		onNavigated(currentScene.getSceneId(), previousScene.getSceneId());
 		return true;
 	}
+
+	/**
+	 * Create the scene with the given scene id ahead of time, so that a later navigation to it neither creates nor
+	 * measures it on the main thread. The scene is created by {@link AsyncSceneHandler#createScene(int)} on a background
+	 * inflater thread, then {@link AsyncSceneHandler#onScenePrepared(Scene)} is called on the main thread when it is
+	 * idle. The prepared scene is used by the next navigation command to it instead of
+	 * {@link SceneHandler#getScene(int)}.
+	 * <p>
+	 * Navigation is locked while a scene is being prepared. Nothing happens if navigation is locked or the scene has
+	 * already been prepared.
+	 * @param sceneId The scene id of the scene to prepare.
+	 * @throws IllegalStateException When the scene handler is not an {@link AsyncSceneHandler}.
+	 */
+	@SuppressWarnings("unchecked")
+	final public void prepare(int sceneId)
+	{
+		if(isLocked() || preparedScenes.get(sceneId) != null) return;
+		if(!(sceneHandler instanceof AsyncSceneHandler))
+		{
+			throw new IllegalStateException("attempt to prepare scene when the scene handler is not an AsyncSceneHandler");
+		}
+
+		setIsLocked(true);
+		prepareLockChangeCount = getLockChangeCount();
+		isPreparing = true;
+		preparingSceneId = sceneId;
+		getInflaterHandler().post(new PrepareTask((AsyncSceneHandler<S>) sceneHandler, sceneId));
+	}
+
+	/**
+	 * Go to the scene with the given scene id once it is prepared. If the scene has already been prepared, this is the
+	 * same as {@link #goTo(int, Object)}. If the scene is being prepared, the navigation completes when that preparation
+	 * finishes. Otherwise the scene is prepared by {@link #prepare(int)} and the navigation completes when the
+	 * preparation finishes, unless navigation is locked, in which case this is the same as {@link #goTo(int, Object)}.
+	 * @param sceneId The scene id of the destination scene.
+	 * @param argument Optional argument supplied to the scene to go.
+	 */
+	final public void goToWhenReady(int sceneId, @Nullable Object argument)
+	{
+		if(preparedScenes.get(sceneId) != null)
+		{
+			goTo(sceneId, argument);
+			return;
+		}
+
+		// Chain onto the running preparation of the same scene.
+		if(isPreparing && preparingSceneId == sceneId && pendingSceneId == NO_SCENE_ID)
+		{
+			pendingSceneId = sceneId;
+			pendingArgument = argument;
+			return;
+		}
+
+		// The navigation is queued like any other command issued while navigation is locked.
+		if(isLocked())
+		{
+			goTo(sceneId, argument);
+			return;
+		}
+
+		prepare(sceneId);
+		pendingSceneId = sceneId;
+		pendingArgument = argument;
+	}
+
+	/**
+	 * Check whether a scene is being prepared. See {@link #prepare(int)}.
+	 * @return <code>true</code> if a scene is being prepared, <code>false</code> otherwise.
+	 */
+	final public boolean isPreparing() { return isPreparing; }
+
+	private void finishPreparing(int sceneId, @Nullable S scene)
+	{
+		isPreparing = false;
+		preparingSceneId = NO_SCENE_ID;
+		if(scene != null) preparedScenes.put(sceneId, scene);
+		final boolean isPending = pendingSceneId == sceneId;
+		final Object argument = pendingArgument;
+		pendingSceneId = NO_SCENE_ID;
+		pendingArgument = null;
+
+		// Only undo the lock taken by prepare(int). If anyone else has locked or unlocked navigation since, for example
+		// MultiStackNavigator switching tabs, the lock is theirs and the pending navigation is queued if it is locked.
+		final boolean isOwningLock = getLockChangeCount() == prepareLockChangeCount;
+		// The pending navigation goes before commands queued while preparing.
+		if(isOwningLock) unlockWithoutReplaying();
+		if(isPending && scene != null) goTo(sceneId, argument);
+		if(isOwningLock) replayCommands();
+	}
+
+	/**
+	 * Get the prepared scene with the given scene id if there is one, otherwise get it from the scene handler.
+	 */
+	private @NonNull S obtainScene(int sceneId)
+	{
+		final S preparedScene = preparedScenes.get(sceneId);
+		if(preparedScene == null) return sceneHandler.getScene(sceneId);
+		preparedScenes.remove(sceneId);
+		prefetchedSceneIds.delete(sceneId);
+		return preparedScene;
+	}
+
+	/**
+	 * Set a scene predictor which records every navigation command and predicts the most likely next scenes. After
+	 * each navigation command, predicted scenes are prefetched one at a time while the main thread is idle.
+	 * <p>
+	 * If the scene handler is an {@link AsyncSceneHandler}, a predicted scene is created by
+	 * {@link AsyncSceneHandler#createScene(int)} and finished by {@link AsyncSceneHandler#onScenePrepared(Scene)},
+	 * then held as long as it is predicted after later navigation commands, until one of them navigates to it. Otherwise
+	 * the predicted scene is only prefetched if {@link #setIsWarmingSceneProvider(boolean)} is enabled. Predicted scenes
+	 * that are the previous scene in the back stack are not prefetched.
+	 * @param scenePredictor The scene predictor, or <code>null</code> to stop predicting.
+	 */
+	final public void setScenePredictor(@Nullable ScenePredictor scenePredictor)
+	{
+		releasePrefetchedScenes();
+		predictedSceneCount = 0;
+		this.scenePredictor = scenePredictor;
+	}
+
+	final public @Nullable ScenePredictor getScenePredictor() { return scenePredictor; }
+
+	/**
+	 * Set whether predicted scenes are fetched by {@link SceneHandler#getScene(int)} when the scene handler is not an
+	 * {@link AsyncSceneHandler}, which warms scene providers that keep the scenes they return, such as
+	 * {@link CachedSceneProvider} and {@link LruSceneProvider}. Default is <code>false</code>. Do not enable it when
+	 * the scene provider creates a scene on every call, such as {@link AllocateSceneProvider}, since every prefetched
+	 * scene would be thrown away.
+	 * @param isWarmingSceneProvider Passing <code>true</code> will fetch predicted scenes, <code>false</code> will not.
+	 */
+	final public void setIsWarmingSceneProvider(boolean isWarmingSceneProvider) { this.isWarmingSceneProvider = isWarmingSceneProvider; }
+
+	final public boolean isWarmingSceneProvider() { return isWarmingSceneProvider; }
+
+	private void onNavigated(int fromSceneId, int toSceneId)
+	{
+		if(scenePredictor == null) return;
+
+		scenePredictor.recordTransition(fromSceneId, toSceneId);
+		if(predictedSceneIds == null || predictedSceneIds.length < scenePredictor.getPredictionCount())
+		{
+			predictedSceneIds = new int[scenePredictor.getPredictionCount()];
+		}
+		predictedSceneCount = scenePredictor.predict(toSceneId, predictedSceneIds);
+		keepPredictedScenes();
+		prefetchPosition = 0;
+		if(predictedSceneCount > 0 && !isPrefetchScheduled)
+		{
+			isPrefetchScheduled = true;
+			Looper.myQueue().addIdleHandler(prefetchIdleHandler);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the scene is prefetched, <code>false</code> if it is skipped.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean prefetchScene(int sceneId)
+	{
+		if(scenePredictor == null || sceneHandler == null || preparedScenes.get(sceneId) != null) return false;
+		final int sceneStackCount = getSceneStackCount();
+		if(sceneStackCount > 1 && getStackSceneId(sceneStackCount - 2) == sceneId) return false;
+
+		final S scene;
+		if(sceneHandler instanceof AsyncSceneHandler)
+		{
+			final AsyncSceneHandler<S> asyncSceneHandler = (AsyncSceneHandler<S>) sceneHandler;
+			scene = asyncSceneHandler.createScene(sceneId);
+			asyncSceneHandler.onScenePrepared(scene);
+			preparedScenes.put(sceneId, scene);
+			prefetchedSceneIds.put(sceneId, true);
+		}
+		else
+		{
+			if(!isWarmingSceneProvider) return false;
+			scene = sceneHandler.getScene(sceneId);
+			if(scene == getCurrentScene()) return false;
+		}
+		scenePredictor.onPrefetched(sceneId, SceneFootprint.estimateBitmapBytes(scene.getView()));
+		return true;
+	}
+
+	/**
+	 * Release prefetched scenes which are not predicted any more. Scenes which are still predicted are kept, and are
+	 * reported to the scene predictor again since each transition starts a new prefetch round.
+	 */
+	private void keepPredictedScenes()
+	{
+		for(int i = prefetchedSceneIds.size() - 1; i >= 0; --i)
+		{
+			final int sceneId = prefetchedSceneIds.keyAt(i);
+			if(isPredicted(sceneId))
+			{
+				final S scene = preparedScenes.get(sceneId);
+				scenePredictor.onPrefetched(sceneId, SceneFootprint.estimateBitmapBytes(scene.getView()));
+				continue;
+			}
+			preparedScenes.remove(sceneId);
+			prefetchedSceneIds.delete(sceneId);
+		}
+	}
+
+	private boolean isPredicted(int sceneId)
+	{
+		for(int i = 0; i < predictedSceneCount; ++i)
+		{
+			if(predictedSceneIds[i] == sceneId) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Release prefetched scenes that have not been used by a navigation command.
+	 */
+	private void releasePrefetchedScenes()
+	{
+		final int prefetchedSceneCount = prefetchedSceneIds.size();
+		for(int i = 0; i < prefetchedSceneCount; ++i)
+		{
+			preparedScenes.remove(prefetchedSceneIds.keyAt(i));
+		}
+		prefetchedSceneIds.clear();
+	}
+
+	/**
+	 * Release prefetched scenes for {@link SceneTrimmer}. Scenes prepared by {@link #prepare(int)} are kept since a
+	 * navigation command is waiting for them.
+	 * @return The estimated bitmap bytes of released scenes.
+	 */
+	final long trimPrefetchedScenes()
+	{
+		long releasedBytes = 0;
+		final int prefetchedSceneCount = prefetchedSceneIds.size();
+		for(int i = 0; i < prefetchedSceneCount; ++i)
+		{
+			final S scene = preparedScenes.get(prefetchedSceneIds.keyAt(i));
+			if(scene != null) releasedBytes += SceneFootprint.estimateBitmapBytes(scene.getView());
+		}
+		releasePrefetchedScenes();
+		return releasedBytes;
+	}
+
+	/**
+	 * Begin a transaction which batches navigation commands, so that building a deep back stack, for example from a
+	 * notification, shows only the final scene. See {@link Transaction}.
+	 * @return A new transaction.
+	 */
+	final public @NonNull Transaction beginTransaction() { return new Transaction(); }
+
+	private void commitTransaction(int[] commands, int[] sceneIds, Object[] arguments, int commandCount)
+	{
+		// Find the final scene, the number of pushed scenes, and the last command which replaces the current scene.
+		int pushCount = 0;
+		int lastReplaceIndex = -1;
+		int finalIndex = -1;
+		for(int i = 0; i < commandCount; ++i)
+		{
+			if(commands[i] == COMMAND_GO_TO) ++pushCount;
+			else if(pushCount == 0) lastReplaceIndex = i;
+			finalIndex = i;
+		}
+
+		beginTiming();
+		final int currentSceneStackIndex = getSceneStackCount() - 1;
+		final int finalSceneId = sceneIds[finalIndex];
+		final S currentScene = getCurrentScene();
+		final S finalScene = obtainScene(finalSceneId);
+		markScenesObtained();
+
+		// Modify the scene stack before calling the scene handler, which may lock navigation.
+		// Arguments of replace commands which are replaced again within the transaction never reach a scene.
+		if(pushCount == 0)
+		{
+			for(int i = 0; i < finalIndex; ++i)
+			{
+				recycleArgument(arguments[i]);
+			}
+			replaceCurrentScene(finalScene, arguments[finalIndex]);
+		}
+		else
+		{
+			for(int i = 0; i < lastReplaceIndex; ++i)
+			{
+				recycleArgument(arguments[i]);
+			}
+			if(lastReplaceIndex >= 0) replaceCurrentScene(sceneIds[lastReplaceIndex], arguments[lastReplaceIndex]);
+
+			// Later replace commands replace the scene pushed by the preceding go-to command.
+			int pendingIndex = -1;
+			for(int i = lastReplaceIndex + 1; i < finalIndex; ++i)
+			{
+				if(pendingIndex >= 0)
+				{
+					if(commands[i] == COMMAND_GO_TO) pushScene(sceneIds[pendingIndex], arguments[pendingIndex]);
+					else recycleArgument(arguments[pendingIndex]);
+				}
+				pendingIndex = i;
+			}
+			if(pendingIndex >= 0)
+			{
+				if(commands[finalIndex] == COMMAND_GO_TO) pushScene(sceneIds[pendingIndex], arguments[pendingIndex]);
+				else recycleArgument(arguments[pendingIndex]);
+			}
+			pushScene(finalScene, arguments[finalIndex]);
+		}
+
+		currentScene.onHide();
+		finalScene.onSetArgument(arguments[finalIndex]);
+		finalScene.onShow();
+		markSceneCallbacksDone();
+		if(pushCount == 0)
+		{
+			sceneHandler.onReplace(currentSceneStackIndex, finalScene, currentSceneStackIndex, currentScene);
+			recycleReleasedArguments();
+			endTiming(TransitionListener.NAVIGATION_REPLACE, currentScene.getSceneId(), finalSceneId);
+		}
+		else
+		{
+			sceneHandler.onGoTo(currentSceneStackIndex + pushCount, finalScene, currentSceneStackIndex, currentScene);
+			recycleReleasedArguments();
+			endTiming(TransitionListener.NAVIGATION_GO_TO, currentScene.getSceneId(), finalSceneId);
+		}
+
+		onNavigated(currentScene.getSceneId(), finalSceneId);
+	}
+
+	@Override
+	final void onReplayCommand(int command, int sceneId, @Nullable Object argument)
+	{
+		switch(command)
+		{
+			case COMMAND_GO_TO: goTo(sceneId, argument); break;
+			case COMMAND_REPLACE: replace(sceneId, argument); break;
+			case COMMAND_RESET: reset(sceneId, argument); break;
+			case COMMAND_BACK: back(); break;
+			case COMMAND_COMMIT: ((Transaction) argument).replay(); break;
+		}
+	}
+
+	@Override
+	final void onDiscardCommand(int command, @Nullable Object argument)
+	{
+		if(command == COMMAND_COMMIT) ((Transaction) argument).discard();
+		else super.onDiscardCommand(command, argument);
+	}
+
+	@Override
+	final @NonNull S onMaterializeScene(int sceneId, @Nullable Object argument)
+	{
+		final S scene = obtainScene(sceneId);
+		scene.onSetArgument(argument);
+		return scene;
+	}
 }
@@ -0,0 +1,137 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of recycled {@link RecyclableScene}s keyed by scene id, similar to the recycled view pool of <code>RecyclerView</code>. Each
+ * scene id has its own capacity, {@link #DEFAULT_MAX_SCENES} by default, and scenes recycled beyond it are dropped.
+ * A pool can be shared by several {@link AllocateSceneProvider}s, for example those of different navigators.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public class ScenePool<S extends Scene>
+{
+	public final static int DEFAULT_MAX_SCENES = 2;
+
+	private final SparseArray<ArrayList<S>> scenes = new SparseArray<>();
+	private final SparseIntArray maxScenes = new SparseIntArray();
+	private int reuseCount;
+	private int missCount;
+
+	/**
+	 * Set the maximum number of pooled scenes with the given scene id. Pooled scenes beyond it are dropped.
+	 * @param sceneId The scene id.
+	 * @param max The maximum number of pooled scenes. Passing <code>0</code> disables pooling of the scene id.
+	 */
+	final public void setMaxRecycledScenes(int sceneId, int max)
+	{
+		if(max < 0) throw new IllegalArgumentException("max cannot be negative");
+		maxScenes.put(sceneId, max);
+		final ArrayList<S> pooledScenes = scenes.get(sceneId);
+		if(pooledScenes == null) return;
+		while(pooledScenes.size() > max)
+		{
+			pooledScenes.remove(pooledScenes.size() - 1);
+		}
+	}
+
+	/**
+	 * Take a scene with the given scene id out of the pool. {@link RecyclableScene#onReuse()} is called on the scene.
+	 * @param sceneId The scene id.
+	 * @return A pooled scene, or <code>null</code> if there is none.
+	 */
+	final public @Nullable S getRecycledScene(int sceneId)
+	{
+		final ArrayList<S> pooledScenes = scenes.get(sceneId);
+		final int pooledCount = pooledScenes == null ? 0 : pooledScenes.size();
+		if(pooledCount == 0)
+		{
+			++missCount;
+			return null;
+		}
+		++reuseCount;
+		final S scene = pooledScenes.remove(pooledCount - 1);
+		((RecyclableScene) scene).onReuse();
+		return scene;
+	}
+
+	/**
+	 * Put a scene into the pool. {@link RecyclableScene#onRecycle()} is called on the scene if it is pooled. The view of
+	 * the scene must have been removed from its parent.
+	 * @param scene The scene to recycle.
+	 * @return <code>true</code> if the scene is pooled, <code>false</code> if it is not a {@link RecyclableScene} or the
+	 * pool of its scene id is full.
+	 */
+	final public boolean putRecycledScene(@NonNull S scene)
+	{
+		if(!(scene instanceof RecyclableScene)) return false;
+		final int sceneId = scene.getSceneId();
+		ArrayList<S> pooledScenes = scenes.get(sceneId);
+		if(pooledScenes == null)
+		{
+			pooledScenes = new ArrayList<>();
+			scenes.put(sceneId, pooledScenes);
+		}
+		if(pooledScenes.size() >= maxScenes.get(sceneId, DEFAULT_MAX_SCENES)) return false;
+		((RecyclableScene) scene).onRecycle();
+		pooledScenes.add(scene);
+		return true;
+	}
+
+	/**
+	 * @param sceneId The scene id.
+	 * @return The number of pooled scenes with the given scene id.
+	 */
+	final public int getRecycledSceneCount(int sceneId)
+	{
+		final ArrayList<S> pooledScenes = scenes.get(sceneId);
+		return pooledScenes == null ? 0 : pooledScenes.size();
+	}
+
+	/**
+	 * Drop all pooled scenes.
+	 */
+	final public void clear()
+	{
+		final int sceneIdCount = scenes.size();
+		for(int i = 0; i < sceneIdCount; ++i)
+		{
+			scenes.valueAt(i).clear();
+		}
+	}
+
+	/**
+	 * Drop all pooled scenes for {@link SceneTrimmer}.
+	 * @return The estimated bitmap bytes of dropped scenes.
+	 */
+	final long trim()
+	{
+		long droppedBytes = 0;
+		final int sceneIdCount = scenes.size();
+		for(int i = 0; i < sceneIdCount; ++i)
+		{
+			final ArrayList<S> pooledScenes = scenes.valueAt(i);
+			final int pooledCount = pooledScenes.size();
+			for(int j = 0; j < pooledCount; ++j)
+			{
+				droppedBytes += SceneFootprint.estimateBitmapBytes(pooledScenes.get(j).getView());
+			}
+			pooledScenes.clear();
+		}
+		return droppedBytes;
+	}
+
+	/**
+	 * @return The number of scenes taken out of the pool.
+	 */
+	final public int getReuseCount() { return reuseCount; }
+
+	/**
+	 * @return The number of times no pooled scene was available.
+	 */
+	final public int getMissCount() { return missCount; }
+}
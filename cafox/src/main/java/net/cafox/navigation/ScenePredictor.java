@@ -0,0 +1,254 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A predictor which records scene-to-scene transitions in a transition-frequency table and predicts the most likely
+ * next scenes. When set to a {@link SceneNavigator} by {@link SceneNavigator#setScenePredictor(ScenePredictor)}, the
+ * navigator records every navigation command and prefetches the predicted scenes while the main thread is idle.
+ * <p>
+ * Each prefetch round is resolved by the next transition: a prefetched scene is a hit if it is the scene navigated to
+ * and is wasted otherwise. The number of hits, the number of wasted prefetches and the estimated bitmap bytes held by
+ * prefetched scenes are exposed so that the prediction count can be tuned.
+ * <p>
+ * The table can be written to and read from a small local file by {@link #writeTo(File)} and {@link #readFrom(File)},
+ * so that predictions survive restarts.
+ */
+public class ScenePredictor
+{
+	private final static int FILE_VERSION = 1;
+
+	/**
+	 * When a count reaches this value, all counts of the same source scene are halved, so that the table adapts to
+	 * changing navigation patterns and never overflows.
+	 */
+	private final static int MAX_COUNT = 0xFFFF;
+
+	private final int sceneCount;
+	private final int[] counts;
+	private int predictionCount = 1;
+
+	private final int[] prefetchedSceneIds;
+	private int prefetchedSceneCount;
+	private long heldBytes;
+	private int hitCount;
+	private int wastedCount;
+
+	/**
+	 * Construct a scene predictor.
+	 * @param sceneCount The number of scenes. Valid scene ids range from <code>0</code> to <code>sceneCount - 1</code>.
+	 */
+	public ScenePredictor(int sceneCount)
+	{
+		if(sceneCount <= 0) throw new IllegalArgumentException("sceneCount must be positive");
+		this.sceneCount = sceneCount;
+		this.counts = new int[sceneCount * sceneCount];
+		this.prefetchedSceneIds = new int[sceneCount];
+	}
+
+	/**
+	 * Set the maximum number of scenes predicted, hence prefetched, after each transition. Default is <code>1</code>.
+	 * @param predictionCount The maximum number of predicted scenes.
+	 */
+	final public void setPredictionCount(int predictionCount)
+	{
+		if(predictionCount <= 0) throw new IllegalArgumentException("predictionCount must be positive");
+		this.predictionCount = predictionCount;
+	}
+
+	final public int getPredictionCount() { return predictionCount; }
+
+	/**
+	 * Record a transition and resolve the previous prefetch round against it. A transition from or to a scene id
+	 * outside <code>0</code> to <code>sceneCount - 1</code> only resolves the prefetch round and is not recorded.
+	 * @param fromSceneId The scene id of the hidden scene.
+	 * @param toSceneId The scene id of the shown scene.
+	 */
+	final public void recordTransition(int fromSceneId, int toSceneId)
+	{
+		for(int i = 0; i < prefetchedSceneCount; ++i)
+		{
+			if(prefetchedSceneIds[i] == toSceneId) ++hitCount;
+			else ++wastedCount;
+		}
+		prefetchedSceneCount = 0;
+		heldBytes = 0;
+
+		if(fromSceneId == toSceneId || !isValidSceneId(fromSceneId) || !isValidSceneId(toSceneId)) return;
+		final int row = fromSceneId * sceneCount;
+		if(++counts[row + toSceneId] < MAX_COUNT) return;
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			counts[row + i] >>= 1;
+		}
+	}
+
+	/**
+	 * Predict the most likely next scenes after the given scene, most likely first. Scenes never navigated to from the
+	 * given scene are not predicted, and nothing is predicted after a scene id outside <code>0</code> to
+	 * <code>sceneCount - 1</code>.
+	 * @param fromSceneId The scene id of the current scene.
+	 * @param outSceneIds The array which receives predicted scene ids. At most {@link #getPredictionCount()} or its
+	 *                    length, whichever is smaller, scene ids are written.
+	 * @return The number of predicted scene ids written.
+	 */
+	final public int predict(int fromSceneId, @NonNull int[] outSceneIds)
+	{
+		if(!isValidSceneId(fromSceneId)) return 0;
+		final int maxCount = Math.min(predictionCount, outSceneIds.length);
+		final int row = fromSceneId * sceneCount;
+		int predictedCount = 0;
+		// Selection of the top counts; the number of predictions is small so this beats sorting.
+		while(predictedCount < maxCount)
+		{
+			int bestSceneId = -1;
+			int bestCount = 0;
+			for(int i = 0; i < sceneCount; ++i)
+			{
+				final int count = counts[row + i];
+				if(count > bestCount && !contains(outSceneIds, predictedCount, i))
+				{
+					bestSceneId = i;
+					bestCount = count;
+				}
+			}
+			if(bestSceneId < 0) break;
+			outSceneIds[predictedCount++] = bestSceneId;
+		}
+		return predictedCount;
+	}
+
+	private boolean isValidSceneId(int sceneId) { return sceneId >= 0 && sceneId < sceneCount; }
+
+	private static boolean contains(int[] sceneIds, int count, int sceneId)
+	{
+		for(int i = 0; i < count; ++i)
+		{
+			if(sceneIds[i] == sceneId) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record that a predicted scene has been prefetched. This is called by the navigator.
+	 * @param sceneId The scene id of the prefetched scene.
+	 * @param bytes The estimated bytes held by the prefetched scene.
+	 */
+	final void onPrefetched(int sceneId, long bytes)
+	{
+		if(contains(prefetchedSceneIds, prefetchedSceneCount, sceneId)) return;
+		prefetchedSceneIds[prefetchedSceneCount++] = sceneId;
+		heldBytes += bytes;
+	}
+
+	/**
+	 * @return The number of prefetched scenes which turned out to be the next scene.
+	 */
+	final public int getHitCount() { return hitCount; }
+
+	/**
+	 * @return The number of prefetched scenes which turned out not to be the next scene.
+	 */
+	final public int getWastedCount() { return wastedCount; }
+
+	/**
+	 * @return The estimated bitmap bytes held by scenes prefetched after the last transition.
+	 */
+	final public long getHeldBytes() { return heldBytes; }
+
+	/**
+	 * Reset hit and wasted counts.
+	 */
+	final public void resetStats()
+	{
+		hitCount = 0;
+		wastedCount = 0;
+	}
+
+	/**
+	 * Write the transition-frequency table to the given file. The table is written to a temporary file first, then
+	 * renamed to the given file, so that the file is never left half-written.
+	 * @param file The file to write.
+	 * @throws IOException When the file cannot be written.
+	 */
+	final public void writeTo(@NonNull File file) throws IOException
+	{
+		final File tempFile = new File(file.getPath() + ".tmp");
+		boolean isRenamed = false;
+		try
+		{
+			final FileOutputStream fileOut = new FileOutputStream(tempFile);
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			try
+			{
+				int entryCount = 0;
+				for(int count : counts)
+				{
+					if(count > 0) ++entryCount;
+				}
+
+				out.writeInt(FILE_VERSION);
+				out.writeInt(sceneCount);
+				out.writeInt(entryCount);
+				for(int i = 0; i < counts.length; ++i)
+				{
+					if(counts[i] == 0) continue;
+					out.writeInt(i);
+					out.writeInt(counts[i]);
+				}
+				out.flush();
+				fileOut.getFD().sync();
+			}
+			finally
+			{
+				out.close();
+			}
+			if(!tempFile.renameTo(file)) throw new IOException("cannot rename " + tempFile + " to " + file);
+			isRenamed = true;
+		}
+		finally
+		{
+			if(!isRenamed) tempFile.delete();
+		}
+	}
+
+	/**
+	 * Replace the transition-frequency table with the one in the given file. Nothing happens if the file does not
+	 * exist, or if it was written by a predictor with a different number of scenes.
+	 * @param file The file to read.
+	 * @return <code>true</code> if the table is read, <code>false</code> otherwise.
+	 * @throws IOException When the file cannot be read or is corrupted.
+	 */
+	final public boolean readFrom(@NonNull File file) throws IOException
+	{
+		if(!file.exists()) return false;
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if(in.readInt() != FILE_VERSION || in.readInt() != sceneCount) return false;
+			final int entryCount = in.readInt();
+			final int[] readCounts = new int[counts.length];
+			for(int i = 0; i < entryCount; ++i)
+			{
+				final int index = in.readInt();
+				if(index < 0 || index >= readCounts.length) throw new IOException("corrupted scene predictor file " + file);
+				readCounts[index] = in.readInt();
+			}
+			System.arraycopy(readCounts, 0, counts, 0, counts.length);
+			return true;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.JsonWriter;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * A debug-time profiler which reports how expensive scenes are to keep cached, so that developers can decide which
+ * scenes belong to a {@link CachedSceneProvider} and which to an {@link AllocateSceneProvider}. For each profiled scene
+ * it records the number of views and the depth of its hierarchy, the bitmap bytes estimated by
+ * {@link SceneFootprint#estimateBitmapBytes(View)}, and the time of a full measure and layout pass against the size of
+ * the container.
+ * <p>
+ * Profiling forces every view of a scene to be measured and laid out again, then requests another layout, so it is
+ * meant for debug builds and must be called on the main thread after the container has been laid out. Profiles are
+ * kept until {@link #clear()}, and can be written as CSV by {@link #writeCsv(File)} or as JSON by
+ * {@link #writeJson(File)}.
+ */
+public class SceneProfiler
+{
+	/**
+	 * The profile of a scene.
+	 */
+	public static final class Profile
+	{
+		private int sceneId;
+		private String sceneName;
+		private int viewCount;
+		private int maxDepth;
+		private long bitmapBytes;
+		private long measureNanos;
+		private long layoutNanos;
+
+		public int getSceneId() { return sceneId; }
+
+		/**
+		 * @return The simple class name of the scene.
+		 */
+		public @NonNull String getSceneName() { return sceneName; }
+
+		public int getViewCount() { return viewCount; }
+
+		public int getMaxDepth() { return maxDepth; }
+
+		public long getBitmapBytes() { return bitmapBytes; }
+
+		public long getMeasureNanos() { return measureNanos; }
+
+		public long getLayoutNanos() { return layoutNanos; }
+	}
+
+	private final static String CSV_HEADER = "sceneId,sceneName,viewCount,maxDepth,bitmapBytes,measureNanos,layoutNanos";
+
+	private final ViewGroup container;
+	private final SparseArray<Profile> profiles = new SparseArray<>();
+
+	/**
+	 * Construct a scene profiler.
+	 * @param container The view group container of the scenes, whose size scenes are measured against.
+	 */
+	public SceneProfiler(@NonNull ViewGroup container)
+	{
+		this.container = container;
+	}
+
+	/**
+	 * Profile the given scene, replacing the previous profile of its scene id.
+	 * @param scene The scene to profile.
+	 * @return The profile.
+	 */
+	final public @NonNull Profile profile(@NonNull Scene scene)
+	{
+		final View view = scene.getView();
+		Profile profile = profiles.get(scene.getSceneId());
+		if(profile == null)
+		{
+			profile = new Profile();
+			profiles.put(scene.getSceneId(), profile);
+		}
+		profile.sceneId = scene.getSceneId();
+		profile.sceneName = scene.getClass().getSimpleName();
+		profile.viewCount = SceneFootprint.countViews(view);
+		profile.maxDepth = SceneFootprint.getMaxDepth(view);
+		profile.bitmapBytes = SceneFootprint.estimateBitmapBytes(view);
+
+		final int width = Math.max(0, container.getWidth() - container.getPaddingLeft() - container.getPaddingRight());
+		final int height = Math.max(0, container.getHeight() - container.getPaddingTop() - container.getPaddingBottom());
+		ViewGroup.LayoutParams lp = view.getLayoutParams();
+		if(lp == null) lp = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+		final int widthMeasureSpec = ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY), 0, lp.width);
+		final int heightMeasureSpec = ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY), 0, lp.height);
+
+		// Invalidate the measure cache of every view so that the whole hierarchy is measured.
+		forceLayout(view);
+		final long startNanos = System.nanoTime();
+		view.measure(widthMeasureSpec, heightMeasureSpec);
+		final long measuredNanos = System.nanoTime();
+		view.layout(view.getLeft(), view.getTop(), view.getLeft() + view.getMeasuredWidth(), view.getTop() + view.getMeasuredHeight());
+		final long laidOutNanos = System.nanoTime();
+		profile.measureNanos = measuredNanos - startNanos;
+		profile.layoutNanos = laidOutNanos - measuredNanos;
+
+		// Let the container lay the scene out as it normally would.
+		view.requestLayout();
+		return profile;
+	}
+
+	private static void forceLayout(View view)
+	{
+		view.forceLayout();
+		if(!(view instanceof ViewGroup)) return;
+		final ViewGroup viewGroup = (ViewGroup) view;
+		final int childCount = viewGroup.getChildCount();
+		for(int i = 0; i < childCount; ++i)
+		{
+			forceLayout(viewGroup.getChildAt(i));
+		}
+	}
+
+	/**
+	 * Profile every scene of the given provider, in the order of scene ids. Scenes are obtained by
+	 * {@link SceneProvider#getScene(int)}, so providers which create scenes lazily create all of them.
+	 * @param sceneProvider The scene provider.
+	 */
+	final public void profileAll(@NonNull SceneProvider<?> sceneProvider)
+	{
+		final int sceneCount = sceneProvider.getSceneCount();
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			profile(sceneProvider.getScene(i));
+		}
+	}
+
+	/**
+	 * @param sceneId The scene id.
+	 * @return The profile of the scene, or <code>null</code> if it has not been profiled.
+	 */
+	final public @Nullable Profile getProfile(int sceneId) { return profiles.get(sceneId); }
+
+	/**
+	 * @return The number of profiled scenes.
+	 */
+	final public int getProfileCount() { return profiles.size(); }
+
+	/**
+	 * @param index The index of the profile, from <code>0</code> to {@link #getProfileCount()} - 1, in the order of
+	 *              scene ids.
+	 * @return The profile.
+	 */
+	final public @NonNull Profile getProfileAt(int index) { return profiles.valueAt(index); }
+
+	/**
+	 * Discard all profiles.
+	 */
+	final public void clear() { profiles.clear(); }
+
+	/**
+	 * Write all profiles as CSV with a header line, one scene per line in the order of scene ids. The file is written
+	 * to a temporary file first, then renamed to the given file.
+	 * @param file The file to write.
+	 * @throws IOException When the file cannot be written.
+	 */
+	final public void writeCsv(@NonNull File file) throws IOException
+	{
+		final File tempFile = new File(file.getPath() + ".tmp");
+		boolean isRenamed = false;
+		try
+		{
+			final FileOutputStream fileOut = new FileOutputStream(tempFile);
+			final Writer out = new BufferedWriter(new OutputStreamWriter(fileOut, "UTF-8"));
+			try
+			{
+				out.write(CSV_HEADER);
+				out.write('\n');
+				final int profileCount = profiles.size();
+				for(int i = 0; i < profileCount; ++i)
+				{
+					final Profile profile = profiles.valueAt(i);
+					out.write(profile.sceneId + "," + profile.sceneName + "," + profile.viewCount + "," + profile.maxDepth
+							+ "," + profile.bitmapBytes + "," + profile.measureNanos + "," + profile.layoutNanos + "\n");
+				}
+				out.flush();
+				fileOut.getFD().sync();
+			}
+			finally
+			{
+				out.close();
+			}
+			if(!tempFile.renameTo(file)) throw new IOException("cannot rename " + tempFile + " to " + file);
+			isRenamed = true;
+		}
+		finally
+		{
+			if(!isRenamed) tempFile.delete();
+		}
+	}
+
+	/**
+	 * Write all profiles as a compact JSON array of objects, in the order of scene ids. The file is written to a
+	 * temporary file first, then renamed to the given file.
+	 * @param file The file to write.
+	 * @throws IOException When the file cannot be written.
+	 */
+	final public void writeJson(@NonNull File file) throws IOException
+	{
+		final File tempFile = new File(file.getPath() + ".tmp");
+		boolean isRenamed = false;
+		try
+		{
+			final FileOutputStream fileOut = new FileOutputStream(tempFile);
+			final JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(fileOut, "UTF-8")));
+			try
+			{
+				out.beginArray();
+				final int profileCount = profiles.size();
+				for(int i = 0; i < profileCount; ++i)
+				{
+					final Profile profile = profiles.valueAt(i);
+					out.beginObject();
+					out.name("sceneId").value(profile.sceneId);
+					out.name("sceneName").value(profile.sceneName);
+					out.name("viewCount").value(profile.viewCount);
+					out.name("maxDepth").value(profile.maxDepth);
+					out.name("bitmapBytes").value(profile.bitmapBytes);
+					out.name("measureNanos").value(profile.measureNanos);
+					out.name("layoutNanos").value(profile.layoutNanos);
+					out.endObject();
+				}
+				out.endArray();
+				out.flush();
+				fileOut.getFD().sync();
+			}
+			finally
+			{
+				out.close();
+			}
+			if(!tempFile.renameTo(file)) throw new IOException("cannot rename " + tempFile + " to " + file);
+			isRenamed = true;
+		}
+		finally
+		{
+			if(!isRenamed) tempFile.delete();
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package net.cafox.navigation;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import net.cafox.interpolator.IOSInterpolator;
+
+/**
+ * Animates an incoming and an outgoing scene view for the animated scene and task handlers. Both views use hardware
+ * layers only while the animation is running, navigation is locked while the animation is running, and frame times of
+ * every transition are reported.
+ */
+final class SceneTransitionAnimator
+{
+	/**
+	 * Called when a transition ends, typically to hide the outgoing scene.
+	 */
+	interface Callback
+	{
+		void onTransitionEnd();
+	}
+
+	private final static long DEFAULT_DURATION = 350;
+
+	/**
+	 * The offset of a scene underneath a sliding scene, relative to the container width.
+	 */
+	private final static float SLIDE_PARALLAX = 0.3f;
+
+	private final SceneManager<?> sceneManager;
+	private final Callback callback;
+	private final ValueAnimator animator = ValueAnimator.ofFloat(0, 1);
+	private final FrameTimeReport frameTimeReport = new FrameTimeReport();
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final Runnable unlockRunnable = new Runnable()
+	{
+		@Override
+		public void run() { sceneManager.setIsLocked(false); }
+	};
+	private FrameTimeReport.Listener frameTimeListener;
+	private int style;
+	private View showView;
+	private View hideView;
+	private boolean isForward;
+	private int showLayerType;
+	private int hideLayerType;
+
+	SceneTransitionAnimator(SceneManager<?> sceneManager, Callback callback)
+	{
+		this.sceneManager = sceneManager;
+		this.callback = callback;
+
+		animator.setDuration(DEFAULT_DURATION);
+		animator.setInterpolator(new IOSInterpolator());
+		animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener()
+		{
+			@Override
+			public void onAnimationUpdate(ValueAnimator animation)
+			{
+				frameTimeReport.onFrame();
+				apply(animation.getAnimatedFraction());
+			}
+		});
+		animator.addListener(new AnimatorListenerAdapter()
+		{
+			@Override
+			public void onAnimationEnd(Animator animation) { finish(); }
+		});
+	}
+
+	void setDuration(long duration) { animator.setDuration(duration); }
+
+	void setFrameTimeListener(FrameTimeReport.Listener frameTimeListener) { this.frameTimeListener = frameTimeListener; }
+
+	/**
+	 * Start a transition. The incoming view must already be shown. This is only called while navigation is unlocked, so
+	 * transitions never overlap.
+	 * @param style One of the <code>STYLE_</code> constants of {@link AnimatedSceneHandler}.
+	 * @param isForward <code>true</code> for go-to and next transitions, <code>false</code> for back and previous ones.
+	 */
+	void start(View showView, View hideView, int style, boolean isForward)
+	{
+		this.style = style;
+		this.showView = showView;
+		this.hideView = hideView;
+		this.isForward = isForward;
+		showLayerType = showView.getLayerType();
+		hideLayerType = hideView.getLayerType();
+		showView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+		hideView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+		if(showView.getWindowToken() != null) showView.buildLayer();
+		if(hideView.getWindowToken() != null) hideView.buildLayer();
+
+		apply(0);
+		sceneManager.setIsLocked(true);
+		frameTimeReport.begin();
+		animator.start();
+	}
+
+	private void apply(float progress)
+	{
+		final int width = ((View) showView.getParent()).getWidth();
+		final float direction = isForward ? 1 : -1;
+		switch(style)
+		{
+			case AnimatedSceneHandler.STYLE_SLIDE:
+				if(isForward)
+				{
+					showView.setTranslationX(width * (1 - progress));
+					hideView.setTranslationX(-width * SLIDE_PARALLAX * progress);
+				}
+				else
+				{
+					showView.setTranslationX(-width * SLIDE_PARALLAX * (1 - progress));
+					hideView.setTranslationX(width * progress);
+				}
+				break;
+			case AnimatedSceneHandler.STYLE_PUSH:
+				showView.setTranslationX(direction * width * (1 - progress));
+				hideView.setTranslationX(-direction * width * progress);
+				break;
+			case AnimatedSceneHandler.STYLE_FADE:
+				showView.setAlpha(progress);
+				hideView.setAlpha(1 - progress);
+				break;
+		}
+	}
+
+	private void finish()
+	{
+		showView.setTranslationX(0);
+		showView.setAlpha(1);
+		hideView.setTranslationX(0);
+		hideView.setAlpha(1);
+		showView.setLayerType(showLayerType, null);
+		hideView.setLayerType(hideLayerType, null);
+		showView = null;
+		hideView = null;
+
+		callback.onTransitionEnd();
+		if(frameTimeListener != null) frameTimeListener.onFrameTimeReport(frameTimeReport);
+		// Unlocking replays queued commands, which may start another transition, so leave the animator's end callback first.
+		mainHandler.post(unlockRunnable);
+	}
+}
@@ -0,0 +1,149 @@
+package net.cafox.navigation;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Releases scenes when the system asks the app to trim memory. Register it by
+ * <code>Context.registerComponentCallbacks(ComponentCallbacks)</code>, or forward
+ * {@link #onTrimMemory(int)} from an activity, then add the navigators and providers it should trim.
+ * <p>
+ * Every trim event first calls {@link TrimmableScene#onTrimMemory(int)} of trimmable scenes in the back stacks and in
+ * cached scene providers. Then, as the trim level rises:
+ * <ul>
+ *     <li>From {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}, hidden scenes which are not in a back stack are
+ *     released: prefetched scenes of navigators, pooled scenes and scenes cached by {@link LruSceneProvider}s.</li>
+ *     <li>At {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} and from
+ *     {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE}, scenes deep in back stacks are released as well, keeping only
+ *     the current scene and the one below it, or only the current scene at
+ *     {@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE}. Released entries keep their arguments and the states of
+ *     {@link StatefulScene}s, and are restored from them when going back. Back stacks of inactive tabs of
+ *     {@link MultiStackNavigator}s are evicted.</li>
+ * </ul>
+ * Back stacks of navigators which are locked, for example by an animating scene handler, are not released. The
+ * estimated bitmap bytes reclaimed by each trim event, as estimated by {@link SceneFootprint#estimateBitmapBytes(android.view.View)},
+ * are reported through {@link #setListener(Listener)}.
+ * <p>
+ * This class requires Ice Cream Sandwich or later, where <code>ComponentCallbacks2</code> was introduced.
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+public class SceneTrimmer implements ComponentCallbacks2
+{
+	/**
+	 * A listener which receives the result of every trim event.
+	 */
+	public interface Listener
+	{
+		/**
+		 * @param level The trim level.
+		 * @param reclaimedBytes The estimated bitmap bytes of released scenes. Memory dropped by trimmable scenes
+		 *                       themselves is not included.
+		 */
+		void onTrimmed(int level, long reclaimedBytes);
+	}
+
+	private final ArrayList<SceneManager<?>> sceneManagers = new ArrayList<>();
+	private final ArrayList<MultiStackNavigator<?>> multiStackNavigators = new ArrayList<>();
+	private final ArrayList<LruSceneProvider<?>> lruSceneProviders = new ArrayList<>();
+	private final ArrayList<CachedSceneProvider<?>> cachedSceneProviders = new ArrayList<>();
+	private final ArrayList<ScenePool<?>> scenePools = new ArrayList<>();
+	private Listener listener;
+	private long lastReclaimedBytes;
+	private long totalReclaimedBytes;
+
+	final public void addSceneManager(@NonNull SceneManager<?> sceneManager) { sceneManagers.add(sceneManager); }
+
+	final public void addMultiStackNavigator(@NonNull MultiStackNavigator<?> multiStackNavigator) { multiStackNavigators.add(multiStackNavigator); }
+
+	final public void addLruSceneProvider(@NonNull LruSceneProvider<?> lruSceneProvider) { lruSceneProviders.add(lruSceneProvider); }
+
+	final public void addCachedSceneProvider(@NonNull CachedSceneProvider<?> cachedSceneProvider) { cachedSceneProviders.add(cachedSceneProvider); }
+
+	final public void addScenePool(@NonNull ScenePool<?> scenePool) { scenePools.add(scenePool); }
+
+	/**
+	 * Set the listener which receives the result of every trim event.
+	 * @param listener The listener, or <code>null</code> to remove the listener.
+	 */
+	final public void setListener(@Nullable Listener listener) { this.listener = listener; }
+
+	/**
+	 * @return The estimated bitmap bytes reclaimed by the last trim event.
+	 */
+	final public long getLastReclaimedBytes() { return lastReclaimedBytes; }
+
+	/**
+	 * @return The estimated bitmap bytes reclaimed by all trim events.
+	 */
+	final public long getTotalReclaimedBytes() { return totalReclaimedBytes; }
+
+	@Override
+	public void onTrimMemory(int level)
+	{
+		final boolean isReleasingHiddenScenes = level >= TRIM_MEMORY_RUNNING_LOW;
+		final boolean isReleasingStackScenes = level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_MODERATE;
+		final int keepCount = level >= TRIM_MEMORY_COMPLETE ? 1 : 2;
+		long reclaimedBytes = 0;
+
+		for(int i = 0; i < cachedSceneProviders.size(); ++i)
+		{
+			cachedSceneProviders.get(i).dispatchTrimMemory(level);
+		}
+		for(int i = 0; i < sceneManagers.size(); ++i)
+		{
+			reclaimedBytes += trim(sceneManagers.get(i), level, isReleasingHiddenScenes, isReleasingStackScenes, keepCount);
+		}
+		for(int i = 0; i < multiStackNavigators.size(); ++i)
+		{
+			final MultiStackNavigator<?> multiStackNavigator = multiStackNavigators.get(i);
+			if(multiStackNavigator.getCurrentTab() < 0) continue;
+			// Only the current tab holds scenes.
+			reclaimedBytes += trim(multiStackNavigator.getCurrentNavigator(), level, isReleasingHiddenScenes, isReleasingStackScenes, keepCount);
+			if(isReleasingStackScenes) multiStackNavigator.evictTabs(1);
+		}
+
+		if(isReleasingHiddenScenes)
+		{
+			for(int i = 0; i < scenePools.size(); ++i)
+			{
+				reclaimedBytes += scenePools.get(i).trim();
+			}
+			// Evict after releasing stack scenes, so that released scenes are no longer in back stacks.
+			for(int i = 0; i < lruSceneProviders.size(); ++i)
+			{
+				reclaimedBytes += lruSceneProviders.get(i).trimAll();
+			}
+		}
+
+		lastReclaimedBytes = reclaimedBytes;
+		totalReclaimedBytes += reclaimedBytes;
+		if(listener != null) listener.onTrimmed(level, reclaimedBytes);
+	}
+
+	private static long trim(SceneManager<?> sceneManager, int level, boolean isReleasingHiddenScenes,
+							 boolean isReleasingStackScenes, int keepCount)
+	{
+		if(sceneManager.getSceneStackCount() == 0) return 0;
+
+		long reclaimedBytes = 0;
+		sceneManager.dispatchTrimMemory(level);
+		if(isReleasingHiddenScenes && sceneManager instanceof SceneNavigator)
+		{
+			reclaimedBytes += ((SceneNavigator<?>) sceneManager).trimPrefetchedScenes();
+		}
+		if(isReleasingStackScenes && !sceneManager.isLocked()) reclaimedBytes += sceneManager.dematerializeScenes(keepCount);
+		return reclaimedBytes;
+	}
+
+	@Override
+	public void onLowMemory() { onTrimMemory(TRIM_MEMORY_COMPLETE); }
+
+	@Override
+	public void onConfigurationChanged(Configuration newConfig) {}
+}
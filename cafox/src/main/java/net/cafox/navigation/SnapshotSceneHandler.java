@@ -0,0 +1,239 @@
+package net.cafox.navigation;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.view.ViewGroup;
+
+import net.cafox.interpolator.IOSInterpolator;
+
+/**
+ * An animated {@link SceneNavigator.SceneHandler} which animates a snapshot of the outgoing scene instead of the scene
+ * itself. When a transition starts, the outgoing scene is drawn once into a bitmap, then hidden by
+ * {@link SceneProvider#hideScene(Scene)} right away, so each frame of the transition draws the outgoing scene as a single
+ * bitmap blit no matter how complex it is. The incoming scene is shown by {@link SceneProvider#showScene(Scene)} and
+ * animated live.
+ * <p>
+ * The snapshot bitmap is reused across transitions and only re-allocated when the size of the outgoing scene changes,
+ * so transitions allocate nothing. It can be released by {@link #releaseSnapshot()}, for example when memory is low.
+ * <p>
+ * Go-to transitions push the snapshot out to the left while the incoming scene slides in from the right, back
+ * transitions do the opposite, and replace transitions fade the snapshot out. Navigation is locked while a transition
+ * is running.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public class SnapshotSceneHandler<S extends Scene> implements SceneNavigator.SceneHandler<S>
+{
+	private final static long DEFAULT_DURATION = 350;
+
+	private final static int TRANSITION_GO_TO = 0;
+	private final static int TRANSITION_BACK = 1;
+	private final static int TRANSITION_REPLACE = 2;
+
+	/**
+	 * A view which draws the snapshot bitmap, added to the container on top of all scenes.
+	 */
+	private static class SnapshotView extends View
+	{
+		private Bitmap bitmap;
+
+		SnapshotView(Context context) { super(context); }
+
+		@Override
+		protected void onDraw(Canvas canvas)
+		{
+			if(bitmap != null) canvas.drawBitmap(bitmap, 0, 0, null);
+		}
+	}
+
+	private final SceneProvider<S> sceneProvider;
+	private final SceneManager<S> sceneManager;
+	private final ViewGroup container;
+	private final SnapshotView snapshotView;
+	private final Canvas snapshotCanvas = new Canvas();
+	private final ValueAnimator animator = ValueAnimator.ofFloat(0, 1);
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final Runnable unlockRunnable = new Runnable()
+	{
+		@Override
+		public void run() { sceneManager.setIsLocked(false); }
+	};
+	private Bitmap snapshot;
+	private View incomingView;
+	private int transition;
+
+	/**
+	 * Construct a snapshot scene handler. A view which draws snapshots is added to the container.
+	 * @param sceneProvider The scene provider.
+	 * @param sceneManager The navigator this handler works with. It is locked while a transition is running.
+	 * @param container The view group container of all scenes, the same one the scene provider uses.
+	 */
+	public SnapshotSceneHandler(@NonNull SceneProvider<S> sceneProvider, @NonNull SceneManager<S> sceneManager, @NonNull ViewGroup container)
+	{
+		this.sceneProvider = sceneProvider;
+		this.sceneManager = sceneManager;
+		this.container = container;
+
+		snapshotView = new SnapshotView(container.getContext());
+		snapshotView.setVisibility(View.GONE);
+		container.addView(snapshotView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+		animator.setDuration(DEFAULT_DURATION);
+		animator.setInterpolator(new IOSInterpolator());
+		animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener()
+		{
+			@Override
+			public void onAnimationUpdate(ValueAnimator animation) { applyProgress(animation.getAnimatedFraction()); }
+		});
+		animator.addListener(new AnimatorListenerAdapter()
+		{
+			@Override
+			public void onAnimationEnd(Animator animation) { finishTransition(); }
+		});
+	}
+
+	/**
+	 * Set the duration of transitions.
+	 * @param duration The duration in milliseconds.
+	 */
+	final public void setDuration(long duration) { animator.setDuration(duration); }
+
+	/**
+	 * Release the snapshot bitmap. It is re-allocated by the next transition.
+	 */
+	final public void releaseSnapshot()
+	{
+		if(animator.isRunning()) return;
+		snapshotView.bitmap = null;
+		if(snapshot != null) snapshot.recycle();
+		snapshot = null;
+	}
+
+	/**
+	 * @return The number of bytes held by the snapshot bitmap.
+	 */
+	final public long getSnapshotBytes() { return SceneFootprint.getBitmapBytes(snapshot); }
+
+	@Override
+	public @NonNull S getScene(int sceneId) { return sceneProvider.getScene(sceneId); }
+
+	@Override
+	public void onShowDefaultScene(S defaultScene)
+	{
+		sceneProvider.showScene(defaultScene);
+	}
+
+	@Override
+	public void onResetHide(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene, int hideSceneCount)
+	{
+		sceneProvider.hideScene(hideScene);
+	}
+
+	@Override
+	public void onResetShow(int showStackIndex, @NonNull S showScene, int hideSceneCount)
+	{
+		sceneProvider.showScene(showScene);
+	}
+
+	@Override
+	public void onReplace(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		startTransition(TRANSITION_REPLACE, showScene, hideScene);
+	}
+
+	@Override
+	public void onGoTo(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		startTransition(TRANSITION_GO_TO, showScene, hideScene);
+	}
+
+	@Override
+	public void onBack(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		startTransition(TRANSITION_BACK, showScene, hideScene);
+	}
+
+	private void startTransition(int transition, S showScene, S hideScene)
+	{
+		final View hideView = hideScene.getView();
+		final boolean isCaptured = capture(hideView);
+		sceneProvider.hideScene(hideScene);
+		sceneProvider.showScene(showScene);
+		if(!isCaptured || showScene == hideScene) return;
+
+		this.transition = transition;
+		incomingView = showScene.getView();
+		snapshotView.bitmap = snapshot;
+		// Scenes added lazily after construction would cover the snapshot.
+		if(container.getChildAt(container.getChildCount() - 1) != snapshotView) snapshotView.bringToFront();
+		snapshotView.setVisibility(View.VISIBLE);
+		snapshotView.invalidate();
+		applyProgress(0);
+		sceneManager.setIsLocked(true);
+		animator.start();
+	}
+
+	/**
+	 * Draw the given view into the snapshot bitmap, re-allocating it only when the size changes.
+	 * @return <code>true</code> if the view is captured, <code>false</code> if it has not been laid out.
+	 */
+	private boolean capture(View view)
+	{
+		final int width = view.getWidth();
+		final int height = view.getHeight();
+		if(width == 0 || height == 0) return false;
+
+		if(snapshot == null || snapshot.getWidth() != width || snapshot.getHeight() != height)
+		{
+			if(snapshot != null) snapshot.recycle();
+			snapshot = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+		else
+		{
+			snapshot.eraseColor(0);
+		}
+
+		snapshotCanvas.setBitmap(snapshot);
+		view.draw(snapshotCanvas);
+		snapshotCanvas.setBitmap(null);
+		return true;
+	}
+
+	private void applyProgress(float progress)
+	{
+		// The snapshot view is not laid out yet on the first frame, so use the container width.
+		final int width = container.getWidth();
+		switch(transition)
+		{
+			case TRANSITION_GO_TO:
+				snapshotView.setTranslationX(-width * progress);
+				incomingView.setTranslationX(width * (1 - progress));
+				break;
+			case TRANSITION_BACK:
+				snapshotView.setTranslationX(width * progress);
+				incomingView.setTranslationX(-width * (1 - progress));
+				break;
+			case TRANSITION_REPLACE:
+				snapshotView.setAlpha(1 - progress);
+				break;
+		}
+	}
+
+	private void finishTransition()
+	{
+		snapshotView.setVisibility(View.GONE);
+		snapshotView.setTranslationX(0);
+		snapshotView.setAlpha(1);
+		incomingView.setTranslationX(0);
+		incomingView = null;
+		// Unlocking replays queued commands, which may start another transition, so leave the animator's end callback first.
+		mainHandler.post(unlockRunnable);
+	}
+}
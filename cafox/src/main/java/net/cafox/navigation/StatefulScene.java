@@ -0,0 +1,24 @@
+package net.cafox.navigation;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+/**
+ * An optional extension of {@link Scene} for scenes which save and restore their own state. When the back stack is saved
+ * by {@link SceneManager#saveState(Bundle)}, each materialized stateful scene saves its state into its own bundle, which
+ * is handed back to {@link #onRestoreState(Bundle)} when the scene is re-created after the back stack is restored.
+ */
+public interface StatefulScene extends Scene
+{
+	/**
+	 * Save the state of this scene.
+	 * @param outState The bundle which receives the state. It belongs to this scene only.
+	 */
+	void onSaveState(@NonNull Bundle outState);
+
+	/**
+	 * Restore the state of this scene. This is called after {@link #onSetArgument(Object)} and before the scene is shown.
+	 * @param savedState The bundle previously filled by {@link #onSaveState(Bundle)}.
+	 */
+	void onRestoreState(@NonNull Bundle savedState);
+}
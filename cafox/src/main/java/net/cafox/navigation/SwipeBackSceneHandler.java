@@ -0,0 +1,392 @@
+package net.cafox.navigation;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+import android.view.animation.DecelerateInterpolator;
+
+/**
+ * A {@link SceneNavigator.SceneHandler} which adds an interactive edge-swipe back gesture to another scene handler.
+ * Dragging from the left edge of the {@link SceneContainer} scrubs between the current scene and the previous scene
+ * on the back stack. When the finger is lifted, the transition settles with the velocity of the finger and either
+ * completes by {@link SceneNavigator#back()} or is cancelled. All other navigation commands, and back commands which do
+ * not come from the gesture, are handled by the wrapped scene handler.
+ * <p>
+ * The previous scene is created and measured when a touch goes down on the edge, and it is shown underneath the
+ * current scene and both are rendered into hardware layers as soon as the touch passes the touch slop, so that the
+ * first frame of the drag does not inflate or measure anything, and taps and vertical scrolls which start on the
+ * edge show nothing.
+ * Navigation is locked from the start of the drag until the transition settles. When a gesture completes,
+ * {@link SceneNavigator.SceneHandler#onBack(int, Scene, int, Scene)} of this handler only hides the outgoing scene,
+ * since the gesture has already animated it.
+ * <p>
+ * The frame times of the drag and the settle are reported through
+ * {@link #setFrameTimeListener(FrameTimeReport.Listener)} on Jelly Bean and later.
+ * @param <S> Sub class of <code>Scene</code> which provides scene-specific information, such as scene title.
+ */
+public class SwipeBackSceneHandler<S extends Scene> implements SceneNavigator.SceneHandler<S>
+{
+	private final static int EDGE_SIZE_DIP = 20;
+	private final static long MAX_SETTLE_DURATION = 300;
+
+	/**
+	 * The offset of the previous scene when the gesture starts, relative to the container width.
+	 */
+	private final static float PARALLAX = 0.3f;
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private class FrameRecorder implements Choreographer.FrameCallback
+	{
+		private final Choreographer choreographer = Choreographer.getInstance();
+		private boolean isRecording;
+
+		@Override
+		public void doFrame(long frameTimeNanos)
+		{
+			if(!isRecording) return;
+			frameTimeReport.onFrame(frameTimeNanos);
+			choreographer.postFrameCallback(this);
+		}
+
+		void start()
+		{
+			isRecording = true;
+			choreographer.postFrameCallback(this);
+		}
+
+		void stop()
+		{
+			isRecording = false;
+			choreographer.removeFrameCallback(this);
+		}
+	}
+
+	private final SceneNavigator<S> sceneNavigator;
+	private final SceneProvider<S> sceneProvider;
+	private final SceneContainer container;
+	private final SceneNavigator.SceneHandler<S> sceneHandler;
+	private final int edgeSize;
+	private final int touchSlop;
+	private final int minFlingVelocity;
+	private final ValueAnimator settleAnimator = new ValueAnimator();
+	private final FrameTimeReport frameTimeReport = new FrameTimeReport();
+	private final FrameRecorder frameRecorder;
+	private FrameTimeReport.Listener frameTimeListener;
+	private VelocityTracker velocityTracker;
+
+	private boolean isTracking;
+	private boolean isDragging;
+	private boolean isSettlingToBack;
+	private boolean isCompletingGesture;
+	private float downX;
+	private float downY;
+	private float offset;
+	private S currentScene;
+	private S previousScene;
+	private int currentLayerType;
+	private int previousLayerType;
+
+	/**
+	 * Construct a swipe-back scene handler. The handler becomes the touch interceptor of the container, and should be
+	 * passed to {@link SceneNavigator#showDefaultScene(SceneNavigator.SceneHandler, int)} in place of the wrapped handler.
+	 * @param sceneNavigator The navigator this handler works with.
+	 * @param sceneProvider The scene provider, whose scenes reside in the container.
+	 * @param container The scene container of all scenes.
+	 * @param sceneHandler The scene handler which handles everything but completed gestures.
+	 */
+	public SwipeBackSceneHandler(@NonNull SceneNavigator<S> sceneNavigator, @NonNull SceneProvider<S> sceneProvider,
+								 @NonNull SceneContainer container, @NonNull SceneNavigator.SceneHandler<S> sceneHandler)
+	{
+		this.sceneNavigator = sceneNavigator;
+		this.sceneProvider = sceneProvider;
+		this.container = container;
+		this.sceneHandler = sceneHandler;
+		this.frameRecorder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameRecorder() : null;
+
+		final ViewConfiguration configuration = ViewConfiguration.get(container.getContext());
+		edgeSize = (int) (EDGE_SIZE_DIP * container.getResources().getDisplayMetrics().density + 0.5f);
+		touchSlop = configuration.getScaledTouchSlop();
+		minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+
+		settleAnimator.setInterpolator(new DecelerateInterpolator());
+		settleAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener()
+		{
+			@Override
+			public void onAnimationUpdate(ValueAnimator animation) { applyOffset((Float) animation.getAnimatedValue()); }
+		});
+		settleAnimator.addListener(new AnimatorListenerAdapter()
+		{
+			@Override
+			public void onAnimationEnd(Animator animation) { finishGesture(); }
+		});
+
+		container.setTouchInterceptor(new SceneContainer.TouchInterceptor()
+		{
+			@Override
+			public boolean onInterceptTouchEvent(MotionEvent event) { return handleTouchEvent(event); }
+
+			@Override
+			public boolean onTouchEvent(MotionEvent event) { return handleTouchEvent(event) || isTracking; }
+
+			@Override
+			public void onDisallowInterceptTouchEvent()
+			{
+				// A child, such as a horizontal scroller, takes the touch over before it becomes a drag.
+				if(isTracking && !isDragging) stopTracking();
+			}
+		});
+	}
+
+	/**
+	 * Set the listener which receives the frame times of every gesture, from the start of the drag to the end of the
+	 * settle. Frame times are only recorded on Jelly Bean and later.
+	 * @param listener The listener, or <code>null</code> to remove the listener.
+	 */
+	final public void setFrameTimeListener(@Nullable FrameTimeReport.Listener listener) { this.frameTimeListener = listener; }
+
+	/**
+	 * @return <code>true</code> if a gesture is being dragged or settled, <code>false</code> otherwise.
+	 */
+	final public boolean isSwiping() { return isDragging || settleAnimator.isRunning(); }
+
+	/**
+	 * Track the gesture.
+	 * @return <code>true</code> if the gesture is being dragged, <code>false</code> otherwise.
+	 */
+	private boolean handleTouchEvent(MotionEvent event)
+	{
+		switch(event.getActionMasked())
+		{
+			case MotionEvent.ACTION_DOWN:
+				if(event.getX() > edgeSize || !startTracking()) return false;
+				downX = event.getX();
+				downY = event.getY();
+				velocityTracker = VelocityTracker.obtain();
+				velocityTracker.addMovement(event);
+				return false;
+			case MotionEvent.ACTION_MOVE:
+				if(!isTracking) return false;
+				velocityTracker.addMovement(event);
+				final float dx = event.getX() - downX;
+				if(!isDragging)
+				{
+					if(Math.abs(event.getY() - downY) > touchSlop || (dx > touchSlop && !startDragging())) stopTracking();
+					if(!isDragging) return false;
+					downX += touchSlop;
+				}
+				applyOffset(Math.max(0, Math.min(event.getX() - downX, container.getWidth())));
+				return true;
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_CANCEL:
+				if(!isTracking) return false;
+				if(!isDragging)
+				{
+					// Let the child which received the touch handle it, such as a click.
+					stopTracking();
+					return false;
+				}
+				velocityTracker.addMovement(event);
+				velocityTracker.computeCurrentVelocity(1000);
+				settle(event.getActionMasked() == MotionEvent.ACTION_UP ? velocityTracker.getXVelocity() : -minFlingVelocity);
+				recycleVelocityTracker();
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Start tracking a touch on the edge. The previous scene is created if it has not been, and measured if its view is
+	 * not laid out by the container, so that nothing but showing it is left for the moment the touch becomes a drag.
+	 * @return <code>true</code> if there is a previous scene, <code>false</code> otherwise.
+	 */
+	private boolean startTracking()
+	{
+		if(isTracking || settleAnimator.isRunning() || sceneNavigator.isLocked()) return false;
+		final int stackCount = sceneNavigator.getSceneStackCount();
+		if(stackCount < 2) return false;
+
+		previousScene = sceneNavigator.getStackScene(stackCount - 2);
+		final View previousView = previousScene.getView();
+		final ViewParent parent = previousView.getParent();
+		if(parent == container) container.measureDetachedChild(previousView);
+		else if(parent == null && sceneProvider instanceof AllocateSceneProvider) ((AllocateSceneProvider<S>) sceneProvider).measureScene(previousScene);
+		isTracking = true;
+		return true;
+	}
+
+	/**
+	 * Show the previous scene underneath the current scene, render both into hardware layers and lock navigation.
+	 * @return <code>true</code> if the previous scene is still the one prepared by {@link #startTracking()},
+	 * <code>false</code> otherwise.
+	 */
+	private boolean startDragging()
+	{
+		// The back stack may have changed since the touch went down.
+		final int stackCount = sceneNavigator.getSceneStackCount();
+		if(stackCount < 2 || sceneNavigator.isLocked() || sceneNavigator.peekStackScene(stackCount - 2) != previousScene) return false;
+
+		currentScene = sceneNavigator.getCurrentScene();
+		final View currentView = currentScene.getView();
+		final View previousView = previousScene.getView();
+		// Showing the previous scene may re-add its view on top, so fix the order afterwards.
+		sceneProvider.showScene(previousScene);
+		if(container.indexOfChild(currentView) < container.indexOfChild(previousView)) currentView.bringToFront();
+		previousView.setTranslationX(-container.getWidth() * PARALLAX);
+
+		currentLayerType = currentView.getLayerType();
+		previousLayerType = previousView.getLayerType();
+		currentView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+		previousView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+		if(container.getWindowToken() != null)
+		{
+			currentView.buildLayer();
+			// The previous scene has not been laid out if it was measured but not yet added, so build its layer on the next frame.
+			if(!previousView.isLayoutRequested()) previousView.buildLayer();
+		}
+
+		isDragging = true;
+		container.getParent().requestDisallowInterceptTouchEvent(true);
+		sceneNavigator.setIsLocked(true);
+		frameTimeReport.begin();
+		if(frameRecorder != null) frameRecorder.start();
+		return true;
+	}
+
+	/**
+	 * Stop tracking a touch which has not become a drag. The previous scene has not been shown, so it is only let go.
+	 */
+	private void stopTracking()
+	{
+		isTracking = false;
+		previousScene = null;
+		recycleVelocityTracker();
+	}
+
+	private void applyOffset(float offset)
+	{
+		this.offset = offset;
+		final int width = container.getWidth();
+		currentScene.getView().setTranslationX(offset);
+		previousScene.getView().setTranslationX(width == 0 ? 0 : -width * PARALLAX * (1 - offset / width));
+	}
+
+	/**
+	 * Settle the transition with the given horizontal velocity of the finger. A fling to the right completes the
+	 * gesture, a fling to the left cancels it, and otherwise the gesture completes if it is dragged over half way.
+	 * @param velocity The horizontal velocity in pixels per second.
+	 */
+	private void settle(float velocity)
+	{
+		final int width = container.getWidth();
+		isSettlingToBack = velocity >= minFlingVelocity || (velocity > -minFlingVelocity && offset > width / 2);
+		final float target = isSettlingToBack ? width : 0;
+		final float distance = Math.abs(target - offset);
+
+		// Keep the speed of the finger when it is fast enough, otherwise settle in a duration proportional to the distance.
+		long duration = width == 0 ? 0 : (long) (MAX_SETTLE_DURATION * distance / width);
+		if(Math.abs(velocity) >= minFlingVelocity) duration = Math.min(duration, (long) (1000 * distance / Math.abs(velocity)));
+		settleAnimator.setFloatValues(offset, target);
+		settleAnimator.setDuration(duration);
+		settleAnimator.start();
+	}
+
+	private void finishGesture()
+	{
+		if(frameRecorder != null) frameRecorder.stop();
+		isDragging = false;
+		if(isSettlingToBack)
+		{
+			// The gesture has already animated the transition, so back() must neither be queued nor animated.
+			sceneNavigator.unlockWithoutReplaying();
+			isCompletingGesture = true;
+			sceneNavigator.back();
+			if(isCompletingGesture)
+			{
+				// The current scene consumed the back command.
+				isCompletingGesture = false;
+				sceneProvider.hideScene(previousScene);
+			}
+		}
+		else
+		{
+			sceneProvider.hideScene(previousScene);
+		}
+		resetViews();
+
+		if(frameTimeListener != null) frameTimeListener.onFrameTimeReport(frameTimeReport);
+		sceneNavigator.setIsLocked(false);
+	}
+
+	private void resetViews()
+	{
+		final View currentView = currentScene.getView();
+		final View previousView = previousScene.getView();
+		currentView.setTranslationX(0);
+		previousView.setTranslationX(0);
+		currentView.setLayerType(currentLayerType, null);
+		previousView.setLayerType(previousLayerType, null);
+		currentScene = null;
+		previousScene = null;
+		isTracking = false;
+		offset = 0;
+	}
+
+	private void recycleVelocityTracker()
+	{
+		if(velocityTracker == null) return;
+		velocityTracker.recycle();
+		velocityTracker = null;
+	}
+
+	@Override
+	public @NonNull S getScene(int sceneId) { return sceneHandler.getScene(sceneId); }
+
+	@Override
+	public void onShowDefaultScene(S defaultScene) { sceneHandler.onShowDefaultScene(defaultScene); }
+
+	@Override
+	public void onResetHide(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene, int hideSceneCount)
+	{
+		sceneHandler.onResetHide(showStackIndex, showScene, hideStackIndex, hideScene, hideSceneCount);
+	}
+
+	@Override
+	public void onResetShow(int showStackIndex, @NonNull S showScene, int hideSceneCount)
+	{
+		sceneHandler.onResetShow(showStackIndex, showScene, hideSceneCount);
+	}
+
+	@Override
+	public void onReplace(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		sceneHandler.onReplace(showStackIndex, showScene, hideStackIndex, hideScene);
+	}
+
+	@Override
+	public void onGoTo(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		sceneHandler.onGoTo(showStackIndex, showScene, hideStackIndex, hideScene);
+	}
+
+	@Override
+	public void onBack(int showStackIndex, @NonNull S showScene, int hideStackIndex, @NonNull S hideScene)
+	{
+		if(!isCompletingGesture)
+		{
+			sceneHandler.onBack(showStackIndex, showScene, hideStackIndex, hideScene);
+			return;
+		}
+		isCompletingGesture = false;
+		sceneProvider.hideScene(hideScene);
+	}
+}
@@ -1,11 +1,24 @@
 package net.cafox.navigation;
 
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.view.ViewParent;
 
 /**
  * A scene navigator which navigates between scenes sequentially and bidirectionally.  Since by design this class
  * work on tasks sequentially, the term <i>task index</i>, instead of <i>scene id</i>, will be used to called those
  * scene-identifying constants.
+ * <p>
+ * Any task can be reached directly by {@link #jumpTo(int)}, which pushes the tasks in between without creating or
+ * showing them. A prefetch window set by {@link #setPrefetchWindow(int)} creates and measures the tasks around the
+ * current task while the main thread is idle, so that the next and previous tasks appear without delay.
  */
 public class TaskNavigator<S extends Scene> extends SceneManager<S>
 {
@@ -53,11 +66,38 @@ public class TaskNavigator<S extends Scene> extends SceneManager<S>
 		void onPrevious(int showTaskIndex, @NonNull S showTask, int hideTaskIndex, @NonNull S hideTask);
 	}
 
+	/**
+	 * A task handler which measures and releases the tasks created by the prefetch window of {@link TaskNavigator},
+	 * so that tasks of providers which allocate scenes are prefetched ready to show and are recycled when they leave
+	 * the window.
+	 * @param <S> Sub class of <code>Task</code> which provides scene-specific information, such as scene title.
+	 */
+	public interface PrefetchTaskHandler<S extends Scene> extends TaskHandler<S>
+	{
+		/**
+		 * Called on the main thread while it is idle, after a task whose view has no parent is prefetched.
+		 * Implementations typically measure the view of the task here, for example by
+		 * {@link AllocateSceneProvider#measureScene(Scene)}, so that showing it later does not measure it again.
+		 * @param taskIndex The task index of the prefetched task.
+		 * @param task The prefetched task.
+		 */
+		void onTaskPrefetched(int taskIndex, @NonNull S task);
+
+		/**
+		 * Called when a task obtained by {@link #getTask(int)} for the prefetch window leaves the window without being
+		 * shown. Implementations typically release the task by {@link SceneProvider#hideScene(Scene)}, which recycles
+		 * it into the {@link ScenePool} of an {@link AllocateSceneProvider}.
+		 * @param taskIndex The task index of the released task.
+		 * @param task The released task.
+		 */
+		void onPrefetchedTaskReleased(int taskIndex, @NonNull S task);
+	}
+
 	/**
 	 * A simple implementation of task handler which simply show and hide scenes without animation.
 	 * @param <S>
 	 */
-	final public static class SimpleTaskHandler<S extends Scene> implements TaskHandler<S>
+	final public static class SimpleTaskHandler<S extends Scene> implements PrefetchTaskHandler<S>
 	{
 		private SceneProvider<S> sceneProvider;
 
@@ -98,20 +138,89 @@ public class TaskNavigator<S extends Scene> extends SceneManager<S>
 			sceneProvider.hideScene(hideTask);
 			sceneProvider.showScene(showTask);
 		}
+
+		@Override
+		public void onTaskPrefetched(int taskIndex, @NonNull S task)
+		{
+			if(sceneProvider instanceof AllocateSceneProvider) ((AllocateSceneProvider<S>) sceneProvider).measureScene(task);
+		}
+
+		@Override
+		public void onPrefetchedTaskReleased(int taskIndex, @NonNull S task)
+		{
+			sceneProvider.hideScene(task);
+		}
 	}
 
 	private TaskHandler<S> taskHandler;
+	private final SparseArray<S> prefetchedTasks = new SparseArray<>();
+	private int prefetchWindow;
+	private int prefetchStep;
+	private boolean isPrefetchScheduled;
+	private final MessageQueue.IdleHandler prefetchIdleHandler = new MessageQueue.IdleHandler()
+	{
+		@Override
+		public boolean queueIdle()
+		{
+			// Prefetch at most one task per idle callback, nearest first, alternating between next and previous tasks.
+			final int currentTaskIndex = getSceneStackCount() - 1;
+			while(prefetchStep < 2 * prefetchWindow)
+			{
+				++prefetchStep;
+				final int offset = (prefetchStep + 1) / 2;
+				if(prefetchTask((prefetchStep & 1) == 1 ? currentTaskIndex + offset : currentTaskIndex - offset)) break;
+			}
+
+			isPrefetchScheduled = prefetchStep < 2 * prefetchWindow;
+			return isPrefetchScheduled;
+		}
+	};
 
 	final public void showDefaultScene(@NonNull TaskHandler<S> taskHandler, int defaultTaskIndex)
 	{
 		if(this.taskHandler != null) throw new IllegalStateException("attempt to set task handler when it has already been set");
 		this.taskHandler = taskHandler;
 
+		beginTiming();
 		final S defaultTask = taskHandler.getTask(defaultTaskIndex);
+		markScenesObtained();
 		defaultTask.onShow();
+		markSceneCallbacksDone();
 		taskHandler.onShowDefaultTask(defaultTask);
 
 		pushDefaultScene(defaultTask);
+		endTiming(TransitionListener.NAVIGATION_SHOW_DEFAULT, defaultTaskIndex, defaultTaskIndex);
+		onNavigated();
+	}
+
+	/**
+	 * Show the tasks saved by {@link #saveState(Bundle)} if the given bundle contains them, otherwise show the default
+	 * task as {@link #showDefaultScene(TaskHandler, int)} does. When the back stack is restored, only its current task
+	 * is created and shown, other tasks are created when going back to them.
+	 * @param taskHandler The task handler.
+	 * @param defaultTaskIndex The task index of the default task, used when the bundle does not contain saved tasks.
+	 * @param savedInstanceState The bundle which may contain saved tasks, typically the saved instance state of an
+	 *                           activity.
+	 */
+	final public void showDefaultScene(@NonNull TaskHandler<S> taskHandler, int defaultTaskIndex, @Nullable Bundle savedInstanceState)
+	{
+		if(this.taskHandler != null) throw new IllegalStateException("attempt to set task handler when it has already been set");
+		if(!restoreSceneStack(savedInstanceState))
+		{
+			showDefaultScene(taskHandler, defaultTaskIndex);
+			return;
+		}
+
+		this.taskHandler = taskHandler;
+		beginTiming();
+		final S currentTask = getCurrentScene();
+		markScenesObtained();
+		currentTask.onShow();
+		markSceneCallbacksDone();
+		taskHandler.onShowDefaultTask(currentTask);
+		final int currentTaskIndex = getSceneStackCount() - 1;
+		endTiming(TransitionListener.NAVIGATION_SHOW_DEFAULT, currentTaskIndex, currentTaskIndex);
+		onNavigated();
 	}
 
 	/**
@@ -126,20 +235,30 @@ public class TaskNavigator<S extends Scene> extends SceneManager<S>
 	 */
 	public boolean next()
 	{
-		if(isLocked()) return true;
+		if(isLocked())
+		{
+			queueCommand(COMMAND_GO_TO, 0, null);
+			return true;
+		}
 
 		if(getSceneStackCount() >= taskHandler.getTaskCount()) return false;
 
+		beginTiming();
 		final int incomingTaskIndex = getSceneStackCount();
 		final int currentTaskIndex = incomingTaskIndex - 1;
-		final S incomingTask = taskHandler.getTask(incomingTaskIndex);
+		final S incomingTask = obtainTask(incomingTaskIndex);
 		final S currentTask = getCurrentScene();
+		markScenesObtained();
+
+		// Modify the scene stack before calling the task handler, which may lock navigation.
+		pushScene(incomingTask, null);
 
 		currentTask.onHide();
 		incomingTask.onShow();
+		markSceneCallbacksDone();
 		taskHandler.onNext(incomingTaskIndex, incomingTask, currentTaskIndex, currentTask);
-
-		pushScene(incomingTask);
+		endTiming(TransitionListener.NAVIGATION_NEXT, currentTaskIndex, incomingTaskIndex);
+		onNavigated();
 		return true;
 	}
 
@@ -163,18 +282,205 @@ public class TaskNavigator<S extends Scene> extends SceneManager<S>
 	 */
 	public boolean previous()
 	{
-		if(isLocked()) return true;
+		if(isLocked())
+		{
+			queueCommand(COMMAND_BACK, 0, null);
+			return true;
+		}
 
 		final S currentTask = getCurrentScene();
 		if(currentTask.onBack()) return true;
+		beginTiming();
 		final int currentTaskIndex = getSceneStackCount() - 1;
 		if(!popScene()) return false;
 
 		final int previousTaskIndex = currentTaskIndex - 1;
 		final S previousTask = getCurrentScene();
+		markScenesObtained();
 		currentTask.onHide();
 		previousTask.onShow();
+		markSceneCallbacksDone();
 		taskHandler.onPrevious(previousTaskIndex, previousTask, currentTaskIndex, currentTask);
+		endTiming(TransitionListener.NAVIGATION_PREVIOUS, currentTaskIndex, previousTaskIndex);
+		onNavigated();
 		return true;
 	}
+
+	/**
+	 * Jump to the task with the given task index, as if {@link #next()} or {@link #previous()} were called repeatedly
+	 * but with a single transition. When jumping forward, tasks in between are pushed onto the back stack without being
+	 * created, and are created when going back to them. When jumping backward, tasks in between are removed from the
+	 * back stack, and {@link Scene#onBack()} of the current task is not called.
+	 * <p>
+	 * {@link TaskHandler#onNext(int, S, int, S)} or {@link TaskHandler#onPrevious(int, S, int, S)} will be used to
+	 * hide and show the tasks. Nothing happens if the given task is the current task.
+	 * @param taskIndex The task index of the task to jump to.
+	 * @throws IllegalArgumentException When the task index is out of range.
+	 */
+	public void jumpTo(int taskIndex)
+	{
+		if(isLocked())
+		{
+			queueCommand(COMMAND_JUMP_TO, taskIndex, null);
+			return;
+		}
+
+		if(taskIndex < 0 || taskIndex >= taskHandler.getTaskCount()) throw new IllegalArgumentException("invalid task index " + taskIndex);
+		final int currentTaskIndex = getSceneStackCount() - 1;
+		if(taskIndex == currentTaskIndex) return;
+
+		beginTiming();
+		final S currentTask = getCurrentScene();
+		if(taskIndex > currentTaskIndex)
+		{
+			final S incomingTask = obtainTask(taskIndex);
+			markScenesObtained();
+
+			// Modify the scene stack before calling the task handler, which may lock navigation.
+			for(int i = currentTaskIndex + 1; i < taskIndex; ++i)
+			{
+				final S prefetchedTask = prefetchedTasks.get(i);
+				if(prefetchedTask == null)
+				{
+					pushScene(i, null);
+					continue;
+				}
+				prefetchedTasks.remove(i);
+				pushScene(prefetchedTask, null);
+			}
+			pushScene(incomingTask, null);
+
+			currentTask.onHide();
+			incomingTask.onShow();
+			markSceneCallbacksDone();
+			taskHandler.onNext(taskIndex, incomingTask, currentTaskIndex, currentTask);
+			endTiming(TransitionListener.NAVIGATION_NEXT, currentTaskIndex, taskIndex);
+		}
+		else
+		{
+			for(int i = currentTaskIndex; i > taskIndex; --i)
+			{
+				popScene();
+			}
+			final S incomingTask = getCurrentScene();
+			markScenesObtained();
+
+			currentTask.onHide();
+			incomingTask.onShow();
+			markSceneCallbacksDone();
+			taskHandler.onPrevious(taskIndex, incomingTask, currentTaskIndex, currentTask);
+			endTiming(TransitionListener.NAVIGATION_PREVIOUS, currentTaskIndex, taskIndex);
+		}
+		onNavigated();
+	}
+
+	/**
+	 * Set the number of tasks on each side of the current task which are created and measured ahead of time while the
+	 * main thread is idle, one task per idle callback. Tasks after the current task are obtained by
+	 * {@link TaskHandler#getTask(int)} and kept until they are navigated to or leave the window; tasks before it are
+	 * the entries of the back stack, which are created if they have not been. Default is <code>0</code>, i.e. no
+	 * prefetching.
+	 * <p>
+	 * A task is measured against its container if its view has a parent. Tasks detached from layout by a
+	 * {@link SceneContainer} are also laid out, so they are shown without another layout pass. Tasks whose views have
+	 * no parent, such as those of an {@link AllocateSceneProvider}, are measured and released by the task handler if it
+	 * is a {@link PrefetchTaskHandler}.
+	 * @param prefetchWindow The number of tasks on each side of the current task.
+	 */
+	final public void setPrefetchWindow(int prefetchWindow)
+	{
+		if(prefetchWindow < 0) throw new IllegalArgumentException("prefetchWindow cannot be negative");
+		this.prefetchWindow = prefetchWindow;
+		if(taskHandler != null) onNavigated();
+	}
+
+	final public int getPrefetchWindow() { return prefetchWindow; }
+
+	private @NonNull S obtainTask(int taskIndex)
+	{
+		final S prefetchedTask = prefetchedTasks.get(taskIndex);
+		if(prefetchedTask == null) return taskHandler.getTask(taskIndex);
+		prefetchedTasks.remove(taskIndex);
+		return prefetchedTask;
+	}
+
+	/**
+	 * Release prefetched tasks outside the prefetch window and schedule prefetching around the current task.
+	 */
+	private void onNavigated()
+	{
+		final int sceneStackCount = getSceneStackCount();
+		final int maxTaskIndex = sceneStackCount - 1 + prefetchWindow;
+		for(int i = prefetchedTasks.size() - 1; i >= 0; --i)
+		{
+			final int taskIndex = prefetchedTasks.keyAt(i);
+			if(taskIndex >= sceneStackCount && taskIndex <= maxTaskIndex) continue;
+
+			final S prefetchedTask = prefetchedTasks.valueAt(i);
+			prefetchedTasks.removeAt(i);
+			if(taskHandler instanceof PrefetchTaskHandler) ((PrefetchTaskHandler<S>) taskHandler).onPrefetchedTaskReleased(taskIndex, prefetchedTask);
+		}
+
+		prefetchStep = 0;
+		if(prefetchWindow == 0 || isPrefetchScheduled) return;
+		isPrefetchScheduled = true;
+		Looper.myQueue().addIdleHandler(prefetchIdleHandler);
+	}
+
+	/**
+	 * @return <code>true</code> if the task is prefetched, <code>false</code> if it is skipped.
+	 */
+	private boolean prefetchTask(int taskIndex)
+	{
+		if(taskIndex < 0 || taskIndex >= taskHandler.getTaskCount()) return false;
+
+		final S task;
+		if(taskIndex < getSceneStackCount())
+		{
+			if(peekStackScene(taskIndex) != null) return false;
+			task = getStackScene(taskIndex);
+		}
+		else
+		{
+			if(prefetchedTasks.get(taskIndex) != null) return false;
+			task = taskHandler.getTask(taskIndex);
+			prefetchedTasks.put(taskIndex, task);
+		}
+
+		final View view = task.getView();
+		final ViewParent parent = view.getParent();
+		if(parent == null)
+		{
+			if(taskHandler instanceof PrefetchTaskHandler) ((PrefetchTaskHandler<S>) taskHandler).onTaskPrefetched(taskIndex, task);
+		}
+		else if(parent instanceof SceneContainer)
+		{
+			((SceneContainer) parent).measureDetachedChild(view);
+		}
+		else if(parent instanceof ViewGroup && view.getVisibility() != View.VISIBLE)
+		{
+			final ViewGroup container = (ViewGroup) parent;
+			if(container.getWidth() == 0 && container.getHeight() == 0) return true;
+			final ViewGroup.LayoutParams lp = view.getLayoutParams();
+			view.measure(ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(container.getWidth(), MeasureSpec.EXACTLY),
+							container.getPaddingLeft() + container.getPaddingRight(), lp.width),
+					ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(container.getHeight(), MeasureSpec.EXACTLY),
+							container.getPaddingTop() + container.getPaddingBottom(), lp.height));
+		}
+		return true;
+	}
+
+	@Override
+	final void onReplayCommand(int command, int sceneId, @Nullable Object argument)
+	{
+		if(command == COMMAND_GO_TO) next();
+		else if(command == COMMAND_BACK) previous();
+		else if(command == COMMAND_JUMP_TO) jumpTo(sceneId);
+	}
+
+	@Override
+	final @NonNull S onMaterializeScene(int sceneId, @Nullable Object argument)
+	{
+		return taskHandler.getTask(sceneId);
+	}
 }
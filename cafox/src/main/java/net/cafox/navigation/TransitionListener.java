@@ -0,0 +1,49 @@
+package net.cafox.navigation;
+
+/**
+ * A listener which receives timings of every navigation command of a {@link SceneNavigator} or a {@link TaskNavigator}.
+ * Set it by {@link SceneManager#setTransitionListener(TransitionListener)}. When no listener is set, navigation commands
+ * neither measure time nor allocate anything for timing.
+ * <p>
+ * A navigation command is divided into the following phases:<br>
+ * 1. getting scenes, from the scene handler, prepared scenes, or by materializing back stack entries.<br>
+ * 2. scene callbacks, namely {@link Scene#onHide()}, {@link Scene#onSetArgument(Object)} and {@link Scene#onShow()}.<br>
+ * 3. the scene handler transition, such as {@link SceneNavigator.SceneHandler#onGoTo(int, Scene, int, Scene)}, which
+ * typically shows and hides scenes through a {@link SceneProvider}.<br>
+ * 4. the time from the end of the transition to the next <code>Choreographer</code> frame.
+ * <p>
+ * A reset command hides scenes one by one, calling {@link Scene#onHide()} and the scene handler alternately, so all of
+ * its hiding is counted as scene callbacks.
+ */
+public interface TransitionListener
+{
+	int NAVIGATION_SHOW_DEFAULT = 0;
+	int NAVIGATION_GO_TO = 1;
+	int NAVIGATION_REPLACE = 2;
+	int NAVIGATION_RESET = 3;
+	int NAVIGATION_BACK = 4;
+	int NAVIGATION_NEXT = 5;
+	int NAVIGATION_PREVIOUS = 6;
+
+	/**
+	 * Called right after a navigation command finishes.
+	 * @param navigation One of the <code>NAVIGATION_*</code> constants.
+	 * @param fromSceneId The scene id of the hidden scene, or the shown scene for
+	 *                    {@link #NAVIGATION_SHOW_DEFAULT}.
+	 * @param toSceneId The scene id of the shown scene. Task indices are used for task navigators.
+	 * @param getSceneNanos The time spent getting scenes, in nanoseconds.
+	 * @param sceneCallbackNanos The time spent in scene callbacks, in nanoseconds.
+	 * @param handlerNanos The time spent in the scene handler transition, in nanoseconds.
+	 */
+	void onTransition(int navigation, int fromSceneId, int toSceneId, long getSceneNanos, long sceneCallbackNanos, long handlerNanos);
+
+	/**
+	 * Called at the first <code>Choreographer</code> frame after a navigation command. When several commands are
+	 * issued before a frame, only the last one is reported. This is never called before Jelly Bean, which has no
+	 * <code>Choreographer</code>.
+	 * @param navigation One of the <code>NAVIGATION_*</code> constants.
+	 * @param toSceneId The scene id of the shown scene.
+	 * @param firstFrameNanos The time from the end of the command to the frame, in nanoseconds.
+	 */
+	void onFirstFrame(int navigation, int toSceneId, long firstFrameNanos);
+}
@@ -0,0 +1,158 @@
+package net.cafox.navigation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+
+/**
+ * A {@link TransitionListener} which collects timings into per-scene histograms, one for each phase of a navigation
+ * command. Histograms can be polled by {@link #getHistogram(int, int)} or dumped by {@link #dump(PrintWriter)}. Scenes
+ * are keyed by the scene id of the shown scene.
+ */
+public class TransitionStats implements TransitionListener
+{
+	public final static int PHASE_GET_SCENE = 0;
+	public final static int PHASE_SCENE_CALLBACK = 1;
+	public final static int PHASE_HANDLER = 2;
+	public final static int PHASE_FIRST_FRAME = 3;
+
+	private final static int PHASE_COUNT = 4;
+
+	private final static String[] PHASE_NAMES = {"getScene", "sceneCallback", "handler", "firstFrame"};
+
+	/**
+	 * A histogram of durations with power-of-two buckets. Bucket <code>i</code> counts durations in
+	 * <code>[2^i, 2^(i+1))</code> nanoseconds, bucket <code>0</code> also counts zero.
+	 */
+	public static class Histogram
+	{
+		private final static int BUCKET_COUNT = 64;
+
+		private final long[] buckets = new long[BUCKET_COUNT];
+		private long count;
+		private long totalNanos;
+		private long maxNanos;
+
+		void add(long nanos)
+		{
+			if(nanos < 0) nanos = 0;
+			++buckets[nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)];
+			++count;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		public long getCount() { return count; }
+
+		public long getTotalNanos() { return totalNanos; }
+
+		public long getMaxNanos() { return maxNanos; }
+
+		public long getMeanNanos() { return count == 0 ? 0 : totalNanos / count; }
+
+		/**
+		 * Get an upper bound of the given percentile, i.e. the upper bound of the bucket which contains it.
+		 * @param percentile The percentile, from <code>0</code> to <code>100</code>.
+		 * @return The upper bound in nanoseconds, or <code>0</code> if the histogram is empty.
+		 */
+		public long getPercentileNanos(double percentile)
+		{
+			if(count == 0) return 0;
+			final long rank = (long) Math.ceil(count * percentile / 100);
+			long accumulated = 0;
+			for(int i = 0; i < BUCKET_COUNT; ++i)
+			{
+				accumulated += buckets[i];
+				if(accumulated >= rank) return Math.min(maxNanos, i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+			}
+			return maxNanos;
+		}
+	}
+
+	private final SparseArray<Histogram[]> histograms = new SparseArray<>();
+
+	@Override
+	public void onTransition(int navigation, int fromSceneId, int toSceneId, long getSceneNanos, long sceneCallbackNanos, long handlerNanos)
+	{
+		final Histogram[] sceneHistograms = getSceneHistograms(toSceneId);
+		sceneHistograms[PHASE_GET_SCENE].add(getSceneNanos);
+		sceneHistograms[PHASE_SCENE_CALLBACK].add(sceneCallbackNanos);
+		sceneHistograms[PHASE_HANDLER].add(handlerNanos);
+	}
+
+	@Override
+	public void onFirstFrame(int navigation, int toSceneId, long firstFrameNanos)
+	{
+		getSceneHistograms(toSceneId)[PHASE_FIRST_FRAME].add(firstFrameNanos);
+	}
+
+	private Histogram[] getSceneHistograms(int sceneId)
+	{
+		Histogram[] sceneHistograms = histograms.get(sceneId);
+		if(sceneHistograms == null)
+		{
+			sceneHistograms = new Histogram[PHASE_COUNT];
+			for(int i = 0; i < PHASE_COUNT; ++i)
+			{
+				sceneHistograms[i] = new Histogram();
+			}
+			histograms.put(sceneId, sceneHistograms);
+		}
+		return sceneHistograms;
+	}
+
+	/**
+	 * Get the histogram of a phase of navigating to the given scene.
+	 * @param sceneId The scene id of the shown scene.
+	 * @param phase One of the <code>PHASE_*</code> constants.
+	 * @return The histogram, or <code>null</code> if the scene has not been navigated to.
+	 */
+	final public @Nullable Histogram getHistogram(int sceneId, int phase)
+	{
+		final Histogram[] sceneHistograms = histograms.get(sceneId);
+		return sceneHistograms == null ? null : sceneHistograms[phase];
+	}
+
+	/**
+	 * Discard all collected timings.
+	 */
+	final public void clear() { histograms.clear(); }
+
+	/**
+	 * Dump the count, mean, 50th, 90th, 99th percentiles and maximum of every histogram, in microseconds, one line per
+	 * scene and phase.
+	 * @param writer The writer.
+	 */
+	final public void dump(@NonNull PrintWriter writer)
+	{
+		writer.println("scene\tphase\tcount\tmean\tp50\tp90\tp99\tmax");
+		final int sceneCount = histograms.size();
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			final int sceneId = histograms.keyAt(i);
+			final Histogram[] sceneHistograms = histograms.valueAt(i);
+			for(int phase = 0; phase < PHASE_COUNT; ++phase)
+			{
+				final Histogram histogram = sceneHistograms[phase];
+				writer.print(sceneId);
+				writer.print('\t');
+				writer.print(PHASE_NAMES[phase]);
+				writer.print('\t');
+				writer.print(histogram.getCount());
+				writer.print('\t');
+				writer.print(histogram.getMeanNanos() / 1000);
+				writer.print('\t');
+				writer.print(histogram.getPercentileNanos(50) / 1000);
+				writer.print('\t');
+				writer.print(histogram.getPercentileNanos(90) / 1000);
+				writer.print('\t');
+				writer.print(histogram.getPercentileNanos(99) / 1000);
+				writer.print('\t');
+				writer.println(histogram.getMaxNanos() / 1000);
+			}
+		}
+		writer.flush();
+	}
+}
@@ -0,0 +1,17 @@
+package net.cafox.navigation;
+
+/**
+ * An optional extension of {@link Scene} for scenes which can drop their own caches when memory is low. Trimmable
+ * scenes are notified by a {@link SceneTrimmer}, whether they are shown, hidden in the back stack or cached by a
+ * {@link CachedSceneProvider}.
+ */
+public interface TrimmableScene extends Scene
+{
+	/**
+	 * Drop caches which can be rebuilt, such as decoded bitmaps. A scene cached by a provider and also in the back
+	 * stack may be called more than once for the same trim event.
+	 * @param level The trim level, one of the <code>TRIM_MEMORY_</code> constants of
+	 *              <code>android.content.ComponentCallbacks2</code>.
+	 */
+	void onTrimMemory(int level);
+}
@@ -353,6 +353,12 @@ public class CircularBitmapView extends View
 		invalidate();
 	}
 
+	/**
+	 * Get the bitmap specified by {@link #setImageBitmap(Bitmap)}.
+	 * @return The bitmap, or <code>null</code> if no bitmap is specified.
+	 */
+	public @Nullable Bitmap getImageBitmap() { return bitmap; }
+
 	@SuppressWarnings("SuspiciousNameCombination")
 	@Override
 	public void onMeasure(final int w, final int h)
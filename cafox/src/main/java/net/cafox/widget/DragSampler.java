@@ -0,0 +1,73 @@
+package net.cafox.widget;
+
+import android.view.MotionEvent;
+
+/**
+ * Turns the touch positions of a drag into whole-pixel scroll deltas. Fractions of pixels are carried to the next
+ * event instead of being truncated, so that the deltas of a drag sum up to the distance the finger has travelled since
+ * {@link #reset(float, float)}, however small the movement of each event is. Adding an event allocates nothing.
+ * <p>
+ * A batched <code>MotionEvent</code> carries historical samples before its current position. The scroll distance of a
+ * drag does not depend on the path between two positions, so only the current position is needed here, while the
+ * historical samples are consumed by <code>VelocityTracker.addMovement(MotionEvent)</code>.
+ */
+final class DragSampler
+{
+	private float lastX;
+	private float lastY;
+	private float remainderX;
+	private float remainderY;
+	private int deltaX;
+	private int deltaY;
+
+	/**
+	 * Start a drag at the given position.
+	 */
+	void reset(final float x, final float y)
+	{
+		lastX = x;
+		lastY = y;
+		remainderX = 0.0f;
+		remainderY = 0.0f;
+		deltaX = 0;
+		deltaY = 0;
+	}
+
+	/**
+	 * Compute the deltas from the last position to the current position of the given event.
+	 * @param e The move event.
+	 */
+	void addMovement(final MotionEvent e)
+	{
+		final float x = e.getX();
+		final float y = e.getY();
+		final float exactDeltaX = x - lastX + remainderX;
+		final float exactDeltaY = y - lastY + remainderY;
+		deltaX = (int) exactDeltaX;
+		deltaY = (int) exactDeltaY;
+		remainderX = exactDeltaX - deltaX;
+		remainderY = exactDeltaY - deltaY;
+		lastX = x;
+		lastY = y;
+	}
+
+	/**
+	 * Move the last position, for example when the view receiving the events has moved under the finger, so that the
+	 * next deltas only reflect the movement of the finger.
+	 */
+	void offset(final float dx, final float dy)
+	{
+		lastX += dx;
+		lastY += dy;
+	}
+
+	/**
+	 * @return The whole pixels the finger has moved in x axis by the last added event.
+	 */
+	int getDeltaX() { return deltaX; }
+
+	/**
+	 * @return The whole pixels the finger has moved in y axis by the last added event.
+	 */
+	int getDeltaY() { return deltaY; }
+}
@@ -0,0 +1,116 @@
+package net.cafox.widget;
+
+/**
+ * A fling whose velocity decays exponentially with time, by {@link #DECELERATION_RATE} every millisecond. Since the
+ * deceleration only depends on the current velocity, the rest of a fling from any frame on is the fling that would
+ * start at that frame with the velocity it has there. A fling which passes from one scrollable view to the next
+ * therefore keeps its velocity by just handing out the rest of its deltas to the next view, and stops exactly where an
+ * uninterrupted fling would.
+ * <p>
+ * Deltas are handed out in whole pixels by {@link #getDelta()}, and fractions of pixels are carried to the next frame,
+ * so the deltas of a fling sum up to its distance rounded to a pixel. Computing a frame allocates nothing.
+ */
+final class FlingEngine
+{
+	/**
+	 * The fraction of velocity kept after each millisecond.
+	 */
+	static final double DECELERATION_RATE = 0.998;
+
+	/**
+	 * The decay constant of velocity, per millisecond.
+	 */
+	private static final double DECAY = -Math.log(DECELERATION_RATE);
+
+	/**
+	 * The remaining distance, in pixels, below which the fling stops.
+	 */
+	private static final double STOP_DISTANCE = 0.5;
+
+	private boolean isFinished = true;
+
+	/**
+	 * The initial velocity, in pixels per millisecond.
+	 */
+	private double startVelocity;
+	private long startMillis;
+	private long lastMillis;
+
+	/**
+	 * The distance travelled until {@link #lastMillis}.
+	 */
+	private double lastPosition;
+
+	/**
+	 * The fraction of a pixel not yet handed out.
+	 */
+	private double remainder;
+	private int delta;
+
+	/**
+	 * Start a fling.
+	 * @param velocity The initial velocity, in pixels per second.
+	 * @param nowMillis The current animation time, in milliseconds.
+	 */
+	void start(final float velocity, final long nowMillis)
+	{
+		startVelocity = velocity / 1000.0;
+		startMillis = nowMillis;
+		lastMillis = nowMillis;
+		lastPosition = 0.0;
+		remainder = 0.0;
+		delta = 0;
+		isFinished = velocity == 0.0f;
+	}
+
+	/**
+	 * Compute the delta of the given frame.
+	 * @param nowMillis The animation time of the frame, in milliseconds.
+	 * @return <code>false</code> if the fling has already finished, <code>true</code> otherwise, in which case the
+	 * delta can be obtained by {@link #getDelta()}. The frame which finishes the fling returns <code>true</code>.
+	 */
+	boolean computeScrollOffset(final long nowMillis)
+	{
+		if(isFinished) return false;
+
+		// Distance travelled is (v0 - v) / DECAY.
+		final double velocity = velocityAt(nowMillis);
+		final double position;
+		if(Math.abs(velocity) / DECAY < STOP_DISTANCE)
+		{
+			// Hand out the rest of the distance.
+			position = startVelocity / DECAY;
+			isFinished = true;
+		}
+		else position = (startVelocity - velocity) / DECAY;
+
+		final double exactDelta = position - lastPosition + remainder;
+		delta = isFinished ? (int) Math.round(exactDelta) : (int) exactDelta;
+		remainder = exactDelta - delta;
+		lastPosition = position;
+		lastMillis = nowMillis;
+		return true;
+	}
+
+	private double velocityAt(final long millis)
+	{
+		return startVelocity * Math.exp(-DECAY * (millis - startMillis));
+	}
+
+	/**
+	 * @return The delta of the last computed frame, in pixels.
+	 */
+	int getDelta() { return delta; }
+
+	/**
+	 * @return The velocity at the last computed frame, in pixels per second.
+	 */
+	float getVelocity() { return isFinished ? 0.0f : (float) (velocityAt(lastMillis) * 1000.0); }
+
+	boolean isFinished() { return isFinished; }
+
+	/**
+	 * Stop the fling.
+	 */
+	void finish() { isFinished = true; }
+}
@@ -0,0 +1,71 @@
+package net.cafox.widget;
+
+import java.util.Arrays;
+
+/**
+ * A Fenwick tree of integers, which adds to a value and sums a prefix of values in O(log n). Values are indexed from
+ * <code>0</code>. The tree reuses its storage when it is rebuilt for the same or a smaller size.
+ */
+final class PrefixSumTree
+{
+	/**
+	 * The tree, indexed from <code>1</code>.
+	 */
+	private int[] tree = new int[1];
+	private int size;
+
+	/**
+	 * Clear the tree to the given number of values, all of which are <code>0</code>. Values can then be set by
+	 * {@link #putInitial(int, int)} followed by {@link #build()}, which takes O(n) in total.
+	 * @param size The number of values.
+	 */
+	void prepare(final int size)
+	{
+		if(tree.length < size + 1) tree = new int[size + 1];
+		else Arrays.fill(tree, 0, size + 1, 0);
+		this.size = size;
+	}
+
+	/**
+	 * Set a value after {@link #prepare(int)} and before {@link #build()}.
+	 */
+	void putInitial(final int index, final int value) { tree[index + 1] = value; }
+
+	/**
+	 * Turn the values set by {@link #putInitial(int, int)} into a tree.
+	 */
+	void build()
+	{
+		for(int i = 1; i <= size; ++i)
+		{
+			final int parent = i + (i & -i);
+			if(parent <= size) tree[parent] += tree[i];
+		}
+	}
+
+	/**
+	 * Add the given delta to the value at the given index.
+	 */
+	void add(final int index, final int delta)
+	{
+		for(int i = index + 1; i <= size; i += i & -i)
+		{
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * @param index The index of the last value to sum. Indices beyond the last value sum all values, and negative
+	 *              indices sum no value.
+	 * @return The sum of the values from index <code>0</code> to the given index, inclusive.
+	 */
+	int sum(final int index)
+	{
+		int sum = 0;
+		for(int i = Math.min(index + 1, size); i > 0; i -= i & -i)
+		{
+			sum += tree[i];
+		}
+		return sum;
+	}
+}
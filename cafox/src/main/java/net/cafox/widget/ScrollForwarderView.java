@@ -6,17 +6,23 @@ import android.graphics.PointF;
 import android.support.annotation.IdRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.view.NestedScrollingChild;
+import android.support.v4.view.NestedScrollingChildHelper;
+import android.support.v4.view.NestedScrollingParent;
+import android.support.v4.view.NestedScrollingParentHelper;
+import android.support.v4.view.ScrollingView;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
-import android.view.animation.Interpolator;
+import android.view.animation.AnimationUtils;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
-import android.widget.OverScroller;
 
 import net.cafox.R;
 
@@ -32,11 +38,18 @@ import java.util.List;
  * is scrolled in the same way as it is in {@link ScrollView} (hence self-scrolling), or it will scroll the content of
  * one particular visible scrollable child, such as a <code>ScrollView</code> or {@link RecyclerView} (hence scroll
  * forwarding).
+ * <p>
+ * This view is a {@link NestedScrollingParent}. Scrollable children which support nested scrolling, such as
+ * <code>RecyclerView</code> or <code>NestedScrollView</code>, scroll their own content when they are dragged, while
+ * this view scrolls itself before and after them in the same pass, and takes over their flings so that a fling
+ * continues across forwardee containers. Such a child needs no custom {@link Forwardee} when it is itself a forwardee
+ * container, see {@link ScrollingViewForwardee}. This view is also a {@link NestedScrollingChild}, so it can sit inside
+ * another nested scrolling parent, such as a <code>CoordinatorLayout</code>.
  */
 // TODO: Handle forwardee container list appropriately when addView() and removeView() is called after layout pass since
 // elements in the list might become invalid.
 @SuppressWarnings("UnusedDeclaration")
-public class ScrollForwarderView extends ViewGroup
+public class ScrollForwarderView extends ViewGroup implements NestedScrollingParent, NestedScrollingChild
 {
 	/**
 	 * An interface that this view uses to forward scroll to scrollable children and to determine whether they has
@@ -51,12 +64,14 @@ public class ScrollForwarderView extends ViewGroup
 		int getViewId();
 
 		/**
-		 * @return The amount scrolled horizontally, i.e. in x axis.
+		 * @return The amount scrolled horizontally, i.e. in x axis. It is only read when this forwardee is set by
+		 * {@link #setForwardeeInContainer(Forwardee, int)}, and is tracked from the forwarded scroll afterwards.
 		 */
 		int getScrollX();
 
 		/**
-		 * @return The amount scrolled vertically, i.e. in y axis.
+		 * @return The amount scrolled vertically, i.e. in y axis. It is only read when this forwardee is set by
+		 * {@link #setForwardeeInContainer(Forwardee, int)}, and is tracked from the forwarded scroll afterwards.
 		 */
 		int getScrollY();
 
@@ -87,6 +102,55 @@ public class ScrollForwarderView extends ViewGroup
 		int scrollVertically(final int dy);
 	}
 
+	/**
+	 * A forwardee of a view implementing {@link ScrollingView}, such as {@link RecyclerView} or
+	 * <code>NestedScrollView</code>, which scrolls the view by {@link View#scrollBy(int, int)} and reports as remainder
+	 * whatever the view did not scroll. A forwardee container which is itself such a view, and has no forwardee set by
+	 * {@link #setForwardeeInContainer(Forwardee, int)}, gets one of this class automatically.
+	 */
+	public static class ScrollingViewForwardee implements Forwardee
+	{
+		private final View view;
+		private final ScrollingView scrollingView;
+
+		/**
+		 * @param view The view which will receive forwarded scroll. It must implement {@link ScrollingView}.
+		 */
+		public ScrollingViewForwardee(@NonNull final View view)
+		{
+			if(!(view instanceof ScrollingView)) throw new IllegalArgumentException("view does not implement ScrollingView");
+			this.view = view;
+			this.scrollingView = (ScrollingView) view;
+		}
+
+		@Override
+		public int getViewId() { return view.getId(); }
+
+		@Override
+		public int getScrollX() { return scrollingView.computeHorizontalScrollOffset(); }
+
+		@Override
+		public int getScrollY() { return scrollingView.computeVerticalScrollOffset(); }
+
+		@Override
+		public int scrollHorizontally(final int dx)
+		{
+			if(dx == 0) return 0;
+			final int scrollX = scrollingView.computeHorizontalScrollOffset();
+			view.scrollBy(dx, 0);
+			return dx - (scrollingView.computeHorizontalScrollOffset() - scrollX);
+		}
+
+		@Override
+		public int scrollVertically(final int dy)
+		{
+			if(dy == 0) return 0;
+			final int scrollY = scrollingView.computeVerticalScrollOffset();
+			view.scrollBy(0, dy);
+			return dy - (scrollingView.computeVerticalScrollOffset() - scrollY);
+		}
+	}
+
 	/**
 	 * A convenient class that holds forwardee container and forwardee together. Typically, one forwardee container
 	 * will have one of this class that stores which forwardee is currently active.
@@ -97,6 +161,17 @@ public class ScrollForwarderView extends ViewGroup
 		public View forwardeeContainer;
 		public Forwardee forwardee;
 
+		/**
+		 * The index of this holder in {@link #containerHolderList}, valid while the list is sorted.
+		 */
+		public int index;
+
+		/**
+		 * The scroll offset of the forwardee in the axis of orientation, as tracked by this view. It is read from the
+		 * forwardee only when the forwardee is set, and updated by the scroll forwarded to it afterwards.
+		 */
+		public int scrollOffset;
+
 		public ForwardeeContainerHolder(@Nullable final View forwardeeContainer, @Nullable final Forwardee forwardee)
 		{
 			this.forwardeeContainer = forwardeeContainer;
@@ -185,23 +260,20 @@ public class ScrollForwarderView extends ViewGroup
 	 */
 	private int maxFlingVelocity;
 
-	private PointF lastTouch = new PointF(0.0f, 0.0f);
-	private PointF currentTouch = new PointF(0.0f, 0.0f);
 	private PointF initialTouch = new PointF(0.0f, 0.0f);
 
+	/**
+	 * Turns touch positions of a drag into scroll deltas without losing fractions of pixels.
+	 */
+	private DragSampler dragSampler = new DragSampler();
+
 	private VelocityTracker velocityTracker;
-	private OverScroller overScroller;
-	private Interpolator interpolator = new Interpolator()
-	{
-		@Override
-		public float getInterpolation(float i)
-		{
-			i -= 1.0f;
-			return i * i * i * i * i + 1.0f;
-		}
-	};
-	private int lastFlingX;
-	private int lastFlingY;
+
+	/**
+	 * The fling, which decays exponentially. Its deceleration only depends on its current velocity, so it keeps its
+	 * velocity when the forwarding token is passed and does not depend on how many forwardee containers it crosses.
+	 */
+	private FlingEngine flingEngine = new FlingEngine();
 
 	/**
 	 * Internal movement state. It is either {@link #STATE_MOVEMENT_IDLE}, {@link #STATE_MOVEMENT_DRAGGING}
@@ -230,7 +302,7 @@ public class ScrollForwarderView extends ViewGroup
 	/**
 	 * Value used to indicate whether {@link #containerHolderList} is completely sorted.
 	 * @see #containerHolderList
-	 * @see #containerHolderSortingBuffer
+	 * @see #containerHolderRegistry
 	 */
 	private boolean isContainerListSorted = false;
 
@@ -239,8 +311,8 @@ public class ScrollForwarderView extends ViewGroup
 	 * forwardee container's sequence in xml declaration, or in other words, their sequence of being added to this view.
 	 * This ensures that this view can pass the forwarding token between forwardee containers by simply incrementing or
 	 * decrementing {@link #currentContainerHolderIndex}. All methods that need to access to forwardee container and its
-	 * forwardee will need to access to this list.
-	 * @see #containerHolderSortingBuffer
+	 * forwardee will need to access to this list. It is rebuilt in one pass over children in {@link #onMeasure(int, int)}.
+	 * @see #containerHolderRegistry
 	 * @see #scrollSelfHorizontallyBy(int)
 	 * @see #scrollSelfVerticallyBy(int)
 	 * @see #forwardScrollHorizontallyBy(int)
@@ -249,18 +321,18 @@ public class ScrollForwarderView extends ViewGroup
 	private List<ForwardeeContainerHolder> containerHolderList = new ArrayList<>();
 
 	/**
-	 * The list that temporarily stores information about which forwardee in which forwardee container is active when
-	 * user calls {@link #setForwardeeInContainer(Forwardee, int)} for later sorting. This allows users to set
-	 * forwardee without worrying about the appropriate sequence of calling this method. The actual sorting is done in
-	 * {@link #onMeasure(int, int)}.
+	 * The registry that stores which forwardee is active in which forwardee container, keyed by the forwardee
+	 * container's id. It is filled when user calls {@link #setForwardeeInContainer(Forwardee, int)}, which allows
+	 * users to set forwardee without worrying about the appropriate sequence of calling this method, and is looked up
+	 * once per forwardee container when {@link #containerHolderList} is sorted in {@link #onMeasure(int, int)}.
 	 * @see #containerHolderList
 	 * @see #setForwardeeInContainer(Forwardee, int)
 	 */
-	private List<ForwardeeContainerHolder> containerHolderSortingBuffer = new ArrayList<>();
+	private SparseArray<ForwardeeContainerHolder> containerHolderRegistry = new SparseArray<>();
 
 	/**
-	 * Cached forwardee container count. Only this value reflects the reality since <code>containerHolderList.size()</code>
-	 * is not guaranteed to be a big as the numbers of forwardee container.
+	 * Cached forwardee container count. It is the same as <code>containerHolderList.size()</code> once the list is
+	 * sorted.
 	 */
 	private int forwardeeContainerCount;
 
@@ -306,6 +378,28 @@ public class ScrollForwarderView extends ViewGroup
 	 */
 	private int selfAndForwardedScrollY = 0;
 
+	/**
+	 * Prefix sums of {@link ForwardeeContainerHolder#scrollOffset} in the order of {@link #containerHolderList}, so
+	 * that self-and-forwarded scroll position can be re-calculated without asking every forwardee for its scroll
+	 * position. It is rebuilt whenever the list is sorted.
+	 */
+	private PrefixSumTree forwardedScrollTree = new PrefixSumTree();
+
+	/**
+	 * The holder of the forwardee container of the current nested scrolling target. The forwarding token can leave this
+	 * container while the target is still being dragged, in which case the target must not scroll any more.
+	 */
+	private ForwardeeContainerHolder nestedTargetHolder = null;
+
+	private NestedScrollingParentHelper nestedScrollingParentHelper;
+	private NestedScrollingChildHelper nestedScrollingChildHelper;
+
+	/**
+	 * Reused buffers for scroll consumed by and offset caused by the nested scrolling parent of this view.
+	 */
+	private final int[] parentConsumed = new int[2];
+	private final int[] parentOffsetInWindow = new int[2];
+
 	public ScrollForwarderView(@NonNull final Context context) { super(context); initialize(context, null);}
 
 	public ScrollForwarderView(@NonNull final Context context, @NonNull final AttributeSet attrs) { super(context, attrs); initialize(context, attrs); }
@@ -321,7 +415,9 @@ public class ScrollForwarderView extends ViewGroup
 		slop = viewConfiguration.getScaledTouchSlop();
 		minFlingVelocity = viewConfiguration.getScaledMinimumFlingVelocity();
 		maxFlingVelocity = viewConfiguration.getScaledMaximumFlingVelocity();
-		overScroller = new OverScroller(context, interpolator);
+		nestedScrollingParentHelper = new NestedScrollingParentHelper(this);
+		nestedScrollingChildHelper = new NestedScrollingChildHelper(this);
+		setNestedScrollingEnabled(true);
 
 		if(attrs == null) return;
 
@@ -348,8 +444,6 @@ public class ScrollForwarderView extends ViewGroup
 	@Override
 	public boolean onInterceptTouchEvent(@NonNull final MotionEvent e)
 	{
-		lastTouch.set(currentTouch);
-		currentTouch.set(e.getX(), e.getY());
 		final int action = e.getActionMasked();
 
 		// Did the touch event end without this view's intervention?
@@ -366,14 +460,15 @@ public class ScrollForwarderView extends ViewGroup
 		{
 			case MotionEvent.ACTION_DOWN:
 				// Record first touch position when user start to touch.
-				initialTouch.set(currentTouch);
+				initialTouch.set(e.getX(), e.getY());
+				dragSampler.reset(e.getX(), e.getY());
 
 				// Is currently flinging?
 				if(movementState == STATE_MOVEMENT_FLINGING)
 				{
 					// Switch to dragging immediately since user might want to
 					// stop the fling.
-					movementState = STATE_MOVEMENT_DRAGGING;
+					startDragging();
 				}
 				else movementState = STATE_MOVEMENT_IDLE;
 
@@ -383,19 +478,16 @@ public class ScrollForwarderView extends ViewGroup
 				// The view is already in dragging state. Just leave.
 				if(movementState == STATE_MOVEMENT_DRAGGING) break;
 
-				// See if user is initiating a drag gesture. User is considered to be
-				// dragging if the current touch position is <slop> pixels away from
-				// initial touch position.
-				final float deltaX = currentTouch.x - initialTouch.x;
-				final float deltaY = currentTouch.y - initialTouch.y;
-				if((orientation == ORIENTATION_HORIZONTAL && Math.abs(deltaX) > slop)
-						|| (orientation == ORIENTATION_VERTICAL && Math.abs(deltaY) > slop))
-				{
-					movementState = STATE_MOVEMENT_DRAGGING;
-				}
+				// A nested scrolling child is scrolling itself. Let it have the drag.
+				if(getNestedScrollAxes() != ViewCompat.SCROLL_AXIS_NONE) break;
+
+				// See if user is initiating a drag gesture. The part of this event beyond slop is scrolled by the
+				// next event received by onTouchEvent(MotionEvent).
+				startDraggingBeyondSlop(e);
 				break;
 		}
 
+		// The velocity tracker consumes historical samples of the event as well.
 		velocityTracker.addMovement(e);
 
 		return movementState == STATE_MOVEMENT_DRAGGING;
@@ -404,39 +496,36 @@ public class ScrollForwarderView extends ViewGroup
 	@Override
 	public boolean onTouchEvent(@NonNull final MotionEvent e)
 	{
-		lastTouch.set(currentTouch);
-		currentTouch.set(e.getX(), e.getY());
-
 		int action = e.getActionMasked();
 		switch(action)
 		{
 			case MotionEvent.ACTION_DOWN:
 				// Reset movementState and first touch position when user start to touch.
-				initialTouch.set(currentTouch);
+				initialTouch.set(e.getX(), e.getY());
+				dragSampler.reset(e.getX(), e.getY());
 
 				// Is currently flinging?
 				if(movementState == STATE_MOVEMENT_FLINGING)
 				{
 					// Switch to dragging immediately.
-					movementState = STATE_MOVEMENT_DRAGGING;
+					startDragging();
 				}
 				else movementState = STATE_MOVEMENT_IDLE;
 
 				if(velocityTracker == null) velocityTracker = VelocityTracker.obtain();
 				break;
 			case MotionEvent.ACTION_MOVE:
-				// The view is already in dragging state. Just leave.
-				if(movementState == STATE_MOVEMENT_DRAGGING) break;
+				// See if user is initiating a drag gesture.
+				if(movementState != STATE_MOVEMENT_DRAGGING) startDraggingBeyondSlop(e);
 
-				// See if user is initiating a drag gesture. User is considered to be
-				// dragging if the current touch position is <slop> pixels away from
-				// initial touch position.
-				final float deltaX = currentTouch.x - initialTouch.x;
-				final float deltaY = currentTouch.y - initialTouch.y;
-				if((orientation == ORIENTATION_HORIZONTAL && Math.abs(deltaX) > slop)
-						|| (orientation == ORIENTATION_VERTICAL && Math.abs(deltaY) > slop))
+				// Is the view in dragging state?
+				if(movementState == STATE_MOVEMENT_DRAGGING)
 				{
-					movementState = STATE_MOVEMENT_DRAGGING;
+					// Calculate scrolling amount and forward that amount to other methods to handle scroll logic.
+					// It passes negative values instead of positive because scroll direction is opposite to the
+					// direction to which user's finger is moving.
+					dragSampler.addMovement(e);
+					handleDragScroll(-dragSampler.getDeltaX(), -dragSampler.getDeltaY());
 				}
 				break;
 			case MotionEvent.ACTION_CANCEL:
@@ -454,24 +543,16 @@ public class ScrollForwarderView extends ViewGroup
 				if(flingHorizontally) velocity = (int) -velocityX;
 				else if(flingVertically) velocity = (int) -velocityY;
 
-				// Is the user flinging?
-				if(flingHorizontally || flingVertically)
+				// Is the user flinging, and the nested scrolling parent of this view does not take over the fling?
+				if((flingHorizontally || flingVertically) && !dispatchNestedPreFling(-velocityX, -velocityY))
 				{
 					// Yes. Issue a fling. Now, the actual scroll computation will be done on the next
 					// call to computeScroll() by its parent, which is triggered by invalidate().
-					movementState = STATE_MOVEMENT_FLINGING;
-
-					// Reset last scroll position.
-					lastFlingX = 0;
-					lastFlingY = 0;
-
-					overScroller.fling(0, 0,
-							velocity, velocity,
-							Integer.MIN_VALUE, Integer.MAX_VALUE,
-							Integer.MIN_VALUE, Integer.MAX_VALUE);
-					invalidate();
+					dispatchNestedFling(-velocityX, -velocityY, true);
+					fling(velocity);
 				}
 				else movementState = STATE_MOVEMENT_IDLE;
+				stopNestedScroll();
 
 				// Recycle velocity tracker and return immediately.
 				velocityTracker.recycle();
@@ -479,20 +560,80 @@ public class ScrollForwarderView extends ViewGroup
 				return true;
 		}
 
-		// Is the view in dragging state?
-		if(movementState == STATE_MOVEMENT_DRAGGING)
+		// The velocity tracker consumes historical samples of the event as well.
+		velocityTracker.addMovement(e);
+
+		return true;
+	}
+
+	/**
+	 * See if user is initiating a drag gesture. User is considered to be dragging if the current touch position is
+	 * <code>slop</code> pixels away from initial touch position. The drag starts from where the finger crossed slop,
+	 * so that it neither jumps by slop nor loses the movement beyond slop.
+	 * @param e The move event.
+	 */
+	private void startDraggingBeyondSlop(@NonNull final MotionEvent e)
+	{
+		final float deltaX = e.getX() - initialTouch.x;
+		final float deltaY = e.getY() - initialTouch.y;
+		if(orientation == ORIENTATION_HORIZONTAL && Math.abs(deltaX) > slop)
+		{
+			dragSampler.reset(initialTouch.x + (deltaX > 0 ? slop : -slop), e.getY());
+		}
+		else if(orientation == ORIENTATION_VERTICAL && Math.abs(deltaY) > slop)
 		{
-			// Calculate scrolling amount and forward that amount to other methods to handle scroll logic.
-			// It passes negative values instead of positive because scroll direction is opposite to the
-			// direction to which user's finger is moving.
-			final int scrollX = (int) (currentTouch.x - lastTouch.x);
-			final int scrollY = (int) (currentTouch.y - lastTouch.y);
-			handleScroll(-scrollX, -scrollY);
+			dragSampler.reset(e.getX(), initialTouch.y + (deltaY > 0 ? slop : -slop));
 		}
+		else return;
 
-		velocityTracker.addMovement(e);
+		startDragging();
+	}
 
-		return true;
+	/**
+	 * Enter dragging state and start sharing the drag with the nested scrolling parent of this view, which lasts until
+	 * the finger is lifted.
+	 */
+	private void startDragging()
+	{
+		movementState = STATE_MOVEMENT_DRAGGING;
+		startNestedScroll(getNestedScrollAxis());
+	}
+
+	/**
+	 * Scroll by a drag of this view, sharing the scroll with the nested scrolling parent of this view before and after
+	 * scrolling.
+	 */
+	private void handleDragScroll(int dx, int dy)
+	{
+		if(dispatchNestedPreScroll(dx, dy, parentConsumed, parentOffsetInWindow))
+		{
+			dx -= parentConsumed[0];
+			dy -= parentConsumed[1];
+			offsetTouchByParent();
+		}
+
+		final int lastScrollX = selfAndForwardedScrollX;
+		final int lastScrollY = selfAndForwardedScrollY;
+		handleScroll(dx, dy);
+		final int consumedX = selfAndForwardedScrollX - lastScrollX;
+		final int consumedY = selfAndForwardedScrollY - lastScrollY;
+		if(dispatchNestedScroll(consumedX, consumedY, dx - consumedX, dy - consumedY, parentOffsetInWindow)) offsetTouchByParent();
+	}
+
+	/**
+	 * Compensate the last touch position for the movement of this view caused by its nested scrolling parent, so
+	 * that the next drag delta only reflects the movement of user's finger.
+	 */
+	private void offsetTouchByParent()
+	{
+		dragSampler.offset(-parentOffsetInWindow[0], -parentOffsetInWindow[1]);
+	}
+
+	private void fling(final int velocity)
+	{
+		movementState = STATE_MOVEMENT_FLINGING;
+		flingEngine.start(velocity, AnimationUtils.currentAnimationTimeMillis());
+		invalidate();
 	}
 
 	@Override
@@ -518,27 +659,31 @@ public class ScrollForwarderView extends ViewGroup
 		// Is this view not in scrolling state?
 		if(movementState != STATE_MOVEMENT_FLINGING)
 		{
-			overScroller.forceFinished(true);
+			flingEngine.finish();
 			return;
 		}
 
 		// Is the flinging finished?
-		if(!overScroller.computeScrollOffset())
+		if(!flingEngine.computeScrollOffset(AnimationUtils.currentAnimationTimeMillis()))
 		{
 			movementState = STATE_MOVEMENT_IDLE;
 			return;
 		}
 
-		// Get scroll delta and apply.
-		final int currentScrollX = overScroller.getCurrX();
-		final int currentScrollY = overScroller.getCurrY();
-		final int dx = orientation == ORIENTATION_HORIZONTAL ? currentScrollX - lastFlingX : 0;
-		final int dy = orientation == ORIENTATION_VERTICAL ? currentScrollY - lastFlingY : 0;
-		handleScroll(dx, dy);
+		// Get scroll delta and apply. A delta which passes the forwarding token goes on into the next container.
+		final boolean scrollHorizontally = orientation == ORIENTATION_HORIZONTAL;
+		final int delta = flingEngine.getDelta();
+		final int lastScroll = scrollHorizontally ? selfAndForwardedScrollX : selfAndForwardedScrollY;
+		handleScroll(scrollHorizontally ? delta : 0, scrollHorizontally ? 0 : delta);
 
-		// Record last scroll position.
-		lastFlingX = currentScrollX;
-		lastFlingY = currentScrollY;
+		// Did the fling reach either end of the content?
+		final int scrolled = (scrollHorizontally ? selfAndForwardedScrollX : selfAndForwardedScrollY) - lastScroll;
+		if(scrolled != delta || flingEngine.isFinished())
+		{
+			flingEngine.finish();
+			movementState = STATE_MOVEMENT_IDLE;
+			return;
+		}
 
 		// Call invalidate again to have this method called again.
 		invalidate();
@@ -569,9 +714,11 @@ public class ScrollForwarderView extends ViewGroup
 		final boolean scrollHorizontally = orientation == ORIENTATION_HORIZONTAL;
 		final boolean scrollVertically = orientation == ORIENTATION_VERTICAL;
 
-		// Measure all children one by one according to their child index.
+		// Measure all children one by one according to their child index. Forwardee containers are appended to the
+		// container list in the same order.
 		final int childCount = getChildCount();
 		forwardeeContainerCount = 0;
+		containerHolderList.clear();
 		for(int i = 0; i < childCount; ++i)
 		{
 			final View child = getChildAt(i);
@@ -590,36 +737,32 @@ public class ScrollForwarderView extends ViewGroup
 				final int forwardeeHeightSpec = MeasureSpec.makeMeasureSpec(childHeightSize, MeasureSpec.EXACTLY);
 				child.measure(forwardeeWidthSpec, forwardeeHeightSpec);
 
-				// Check whether this child has been associated with any forwardee in
-				// sorting buffer.
-				boolean hasForwardee = false;
-				for(ForwardeeContainerHolder container : containerHolderSortingBuffer)
+				// Check whether this child has been associated with any forwardee in the registry.
+				final int containerId = child.getId();
+				ForwardeeContainerHolder container = containerHolderRegistry.get(containerId);
+				if(container == null && child instanceof ScrollingView && containerId != NO_ID)
 				{
-					final View forwardeeContainer = container.forwardeeContainer;
-					final Forwardee forwardee = container.forwardee;
-					if(child == forwardeeContainer && forwardee != null)
-					{
-						// This child has been associated with a valid forwardee.
-						// Record this in the actual container list. It is assumed
-						// that correct amount of space is already reserved in the list.
-						containerHolderList.set(forwardeeContainerCount, container);
-						hasForwardee = true;
-
-						// Since the position of current forwardee container might change due to adding or removing containers,
-						// we need to reflect this change by updating current container holder index.
-						if(currentForwardeeContainer == forwardeeContainer) currentContainerHolderIndex = forwardeeContainerCount;
-						break;
-					}
+					// A scrolling view is its own forwardee unless told otherwise.
+					container = new ForwardeeContainerHolder(child, new ScrollingViewForwardee(child));
+					container.scrollOffset = getForwardeeScroll(container.forwardee);
+					containerHolderRegistry.put(containerId, container);
 				}
-
-				if(hasForwardee)
+				if(container != null && container.forwardee != null)
 				{
+					// This child has been associated with a valid forwardee. Record this in the actual
+					// container list. The child might be a new view with the id of a removed one.
+					container.forwardeeContainer = child;
+					container.index = forwardeeContainerCount;
+					containerHolderList.add(container);
+
+					// Since the position of current forwardee container might change due to adding or removing containers,
+					// we need to reflect this change by updating current container holder index.
+					if(currentForwardeeContainer == child) currentContainerHolderIndex = forwardeeContainerCount;
 					++forwardeeContainerCount;
 					continue;
 				}
 
 				// No forwardee. Tell users to set up forwardee for this container appropriately.
-				final int containerId = child.getId();
 				final String idName = getContext().getResources().getResourceName(containerId);
 				throw new IllegalStateException(
 						"forwardee container with id " + idName + " is not associated " +
@@ -631,6 +774,14 @@ public class ScrollForwarderView extends ViewGroup
 			measureChildWithMargins(child, w, 0, h, 0);
 		}
 
+		// Rebuild prefix sums of forwardee scroll offsets in the new order of containers.
+		forwardedScrollTree.prepare(forwardeeContainerCount);
+		for(int i = 0; i < forwardeeContainerCount; ++i)
+		{
+			forwardedScrollTree.putInitial(i, containerHolderList.get(i).scrollOffset);
+		}
+		forwardedScrollTree.build();
+
 		// Is there no forwardee container?
 		if(forwardeeContainerCount == 0)
 		{
@@ -779,61 +930,48 @@ public class ScrollForwarderView extends ViewGroup
 				"container itself");
 
 		// The arguments are valid. Now set the forwardee.
+		final ForwardeeContainerHolder container = containerHolderRegistry.get(forwardeeContainerId);
+
 		// Is the container list already sorted?
 		if(isContainerListSorted)
 		{
-			// Just iterate through existing container and replace forwardee.
-			// For performance we assume the container's view is not null.
-			for(ForwardeeContainerHolder container : containerHolderList)
-			{
-				if(container.forwardeeContainer.getId() == forwardeeContainerId)
-				{
-					container.forwardee = forwardee;
-
-					// Since the forwardee might have scroll position different from that of the previous one,
-					// we need to re-calculate self-and-forwarded scroll position.
-					reCalculateSelfAndForwardedScroll();
-					return;
-				}
-			}
-
-			throw new IllegalStateException(
+			// Every forwardee container in a sorted list is in the registry. Just replace forwardee.
+			if(container == null) throw new IllegalStateException(
 					"forwardee container list is sorted but no container has the given id: " +
 					getContext().getResources().getResourceName(forwardeeContainerId));
+			container.forwardee = forwardee;
+
+			// Since the forwardee might have scroll position different from that of the previous one,
+			// we need to re-calculate self-and-forwarded scroll position.
+			final int scrollOffset = getForwardeeScroll(forwardee);
+			forwardedScrollTree.add(container.index, scrollOffset - container.scrollOffset);
+			container.scrollOffset = scrollOffset;
+			reCalculateSelfAndForwardedScroll();
+			return;
 		}
 
-		// Ths container list is not yet sorted. It will be sorted later in measurement pass.
-		// Search in sorting buffer.
-		for(ForwardeeContainerHolder container : containerHolderSortingBuffer)
+		// Ths container list is not yet sorted. It will be sorted later in measurement pass, where
+		// self-and-forwarded scroll position will be re-calculated as well.
+		if(container != null)
 		{
-			if(container.forwardeeContainer.getId() == forwardeeContainerId)
-			{
-				container.forwardee = forwardee;
-
-				// Self-and-forwarded scroll position will be re-calculated in measurement pass. Just leave.
-				return;
-			}
+			container.forwardeeContainer = forwardeeContainer;
+			container.forwardee = forwardee;
+			container.scrollOffset = getForwardeeScroll(forwardee);
+		}
+		else
+		{
+			final ForwardeeContainerHolder newContainer = new ForwardeeContainerHolder(forwardeeContainer, forwardee);
+			newContainer.scrollOffset = getForwardeeScroll(forwardee);
+			containerHolderRegistry.put(forwardeeContainerId, newContainer);
 		}
-
-		// Container is not even in sorting buffer. Reserve a dummy to actual list and add
-		// the given pair of container and forwardee to sorting buffer.
-		containerHolderList.add(null);
-		containerHolderSortingBuffer.add(new ForwardeeContainerHolder(forwardeeContainer, forwardee));
 	}
 
 	public @Nullable Forwardee getForwardeeInContainer(@IdRes final int forwardeeContainerId)
 	{
 		if(!isContainerListSorted) return null;
 
-		for(final ForwardeeContainerHolder container : containerHolderList)
-		{
-			if(container.forwardeeContainer.getId() == forwardeeContainerId)
-			{
-				return container.forwardee;
-			}
-		}
-
-		return null;
+		final ForwardeeContainerHolder container = containerHolderRegistry.get(forwardeeContainerId);
+		return container == null ? null : container.forwardee;
 	}
 
 	/**
@@ -1036,6 +1174,7 @@ public class ScrollForwarderView extends ViewGroup
 		final int remainderDx = currentForwardee.scrollHorizontally(dx);
 		final int scrolledDx = dx - remainderDx;
 		selfAndForwardedScrollX += scrolledDx;
+		trackForwardedScroll(scrolledDx);
 		if(remainderDx > 0) passTokenToNextContainer();
 		return remainderDx;
 	}
@@ -1045,6 +1184,7 @@ public class ScrollForwarderView extends ViewGroup
 		final int remainderDy = currentForwardee.scrollVertically(dy);
 		final int scrolledDy = dy - remainderDy;
 		selfAndForwardedScrollY += scrolledDy;
+		trackForwardedScroll(scrolledDy);
 		if(remainderDy > 0) passTokenToNextContainer();
 		return remainderDy;
 	}
@@ -1112,30 +1252,46 @@ public class ScrollForwarderView extends ViewGroup
 		}
 	}
 
-	private void reCalculateSelfAndForwardedScroll()
+	/**
+	 * Record the scroll consumed by the current forwardee in its tracked scroll offset and in the prefix sums.
+	 * @param scrolled The consumed scroll in the axis of orientation.
+	 */
+	private void trackForwardedScroll(final int scrolled)
 	{
-		if(orientation == ORIENTATION_HORIZONTAL) reCalculateSelfAndForwardedScrollX();
-		else reCalculateSelfAndForwardedScrollY();
+		if(currentContainerHolderIndex < 0 || currentContainerHolderIndex >= forwardeeContainerCount) return;
+		trackForwardedScroll(containerHolderList.get(currentContainerHolderIndex), scrolled);
 	}
 
-	private void reCalculateSelfAndForwardedScrollX()
+	/**
+	 * Record the scroll consumed by the forwardee of the given holder in its tracked scroll offset and in the prefix sums.
+	 * @param holder The holder of the forwardee that has scrolled.
+	 * @param scrolled The consumed scroll in the axis of orientation.
+	 */
+	private void trackForwardedScroll(@NonNull final ForwardeeContainerHolder holder, final int scrolled)
 	{
-		selfAndForwardedScrollX = getScrollX();
-		for(int i = 0; i < forwardeeContainerCount; ++i)
-		{
-			selfAndForwardedScrollX += containerHolderList.get(i).forwardee.getScrollX();
-			if(i >= currentContainerHolderIndex) break;
-		}
+		if(scrolled == 0) return;
+		holder.scrollOffset += scrolled;
+		forwardedScrollTree.add(holder.index, scrolled);
 	}
 
-	private void reCalculateSelfAndForwardedScrollY()
+	/**
+	 * @return The scroll position of the given forwardee in the axis of orientation.
+	 */
+	private int getForwardeeScroll(@NonNull final Forwardee forwardee)
 	{
-		selfAndForwardedScrollY = getScrollY();
-		for(int i = 0; i < forwardeeContainerCount; ++i)
-		{
-			selfAndForwardedScrollY += containerHolderList.get(i).forwardee.getScrollY();
-			if(i >= currentContainerHolderIndex) break;
-		}
+		return orientation == ORIENTATION_HORIZONTAL ? forwardee.getScrollX() : forwardee.getScrollY();
+	}
+
+	/**
+	 * Re-calculate self-and-forwarded scroll position as the scroll position of this view plus the scroll offsets of
+	 * forwardees up to and including the current one, in O(log n) of the number of forwardee containers.
+	 */
+	private void reCalculateSelfAndForwardedScroll()
+	{
+		// Forwardees up to the current one are summed, or the first one when there is no current one yet.
+		final int forwardedScroll = forwardedScrollTree.sum(Math.max(0, currentContainerHolderIndex));
+		if(orientation == ORIENTATION_HORIZONTAL) selfAndForwardedScrollX = getScrollX() + forwardedScroll;
+		else selfAndForwardedScrollY = getScrollY() + forwardedScroll;
 	}
 
 	/**
@@ -1154,6 +1310,207 @@ public class ScrollForwarderView extends ViewGroup
 		return selfAndForwardedScrollY;
 	}
 
+	/**
+	 * @return The nested scroll axis of the orientation of this view.
+	 */
+	private int getNestedScrollAxis()
+	{
+		return orientation == ORIENTATION_HORIZONTAL ? ViewCompat.SCROLL_AXIS_HORIZONTAL : ViewCompat.SCROLL_AXIS_VERTICAL;
+	}
+
+	/**
+	 * Set scroll state according to whether the current forwardee container is at the start of view port, where
+	 * scroll is forwarded to its forwardee first.
+	 */
+	private void updateScrollState()
+	{
+		final int screenStart = orientation == ORIENTATION_HORIZONTAL ? getScrollX() + getPaddingLeft() : getScrollY() + getPaddingTop();
+		scrollState = currentContainerHolderIndex < forwardeeContainerCount && currentContainerStart == screenStart
+				? STATE_SCROLL_FORWARDING : STATE_SCROLL_SCROLLING_SELF;
+	}
+
+	@Override
+	public boolean onStartNestedScroll(final View child, final View target, final int nestedScrollAxes)
+	{
+		// Only accept nested scroll from forwardee containers, since this view can only pass forwarding token to them.
+		if((nestedScrollAxes & getNestedScrollAxis()) == 0 || !isContainerListSorted) return false;
+		final ForwardeeContainerHolder container = containerHolderRegistry.get(child.getId());
+		return container != null && container.forwardeeContainer == child;
+	}
+
+	@Override
+	public void onNestedScrollAccepted(final View child, final View target, final int nestedScrollAxes)
+	{
+		nestedScrollingParentHelper.onNestedScrollAccepted(child, target, nestedScrollAxes);
+
+		// Stop flinging since user is touching the target.
+		movementState = STATE_MOVEMENT_IDLE;
+		flingEngine.finish();
+
+		// The target scrolls itself, so its container holds the forwarding token from now on.
+		nestedTargetHolder = containerHolderRegistry.get(child.getId());
+		setCurrentContainerHolderIndex(nestedTargetHolder.index);
+		updateScrollState();
+		startNestedScroll(nestedScrollAxes & getNestedScrollAxis());
+	}
+
+	@Override
+	public void onNestedPreScroll(final View target, int dx, int dy, final int[] consumed)
+	{
+		// Let the nested scrolling parent of this view consume first.
+		if(dispatchNestedPreScroll(dx, dy, parentConsumed, null))
+		{
+			consumed[0] += parentConsumed[0];
+			consumed[1] += parentConsumed[1];
+			dx -= parentConsumed[0];
+			dy -= parentConsumed[1];
+		}
+
+		// The forwarding token has left the target's container, e.g. the drag went past the target's end and scrolled
+		// its container off the view port. Handle the scroll here so that the target only sees what this view cannot
+		// scroll, at either end of the content.
+		if(!isNestedTargetCurrent())
+		{
+			final int lastScrollX = selfAndForwardedScrollX;
+			final int lastScrollY = selfAndForwardedScrollY;
+			if(orientation == ORIENTATION_HORIZONTAL) handleScroll(dx, 0);
+			else handleScroll(0, dy);
+			consumed[0] += selfAndForwardedScrollX - lastScrollX;
+			consumed[1] += selfAndForwardedScrollY - lastScrollY;
+			return;
+		}
+
+		// Scrolling towards positive, the target's container must reach the start of view port before the target
+		// scrolls its own content. Scrolling towards negative, the target scrolls first.
+		if(orientation == ORIENTATION_HORIZONTAL && dx > 0 && currentContainerHolderIndex < forwardeeContainerCount)
+		{
+			final int remainderDx = scrollSelfHorizontallyBy(dx);
+			consumed[0] += dx - remainderDx;
+			if(remainderDx != 0) scrollState = STATE_SCROLL_FORWARDING;
+		}
+		else if(orientation == ORIENTATION_VERTICAL && dy > 0 && currentContainerHolderIndex < forwardeeContainerCount)
+		{
+			final int remainderDy = scrollSelfVerticallyBy(dy);
+			consumed[1] += dy - remainderDy;
+			if(remainderDy != 0) scrollState = STATE_SCROLL_FORWARDING;
+		}
+	}
+
+	@Override
+	public void onNestedScroll(final View target, final int dxConsumed, final int dyConsumed,
+							   final int dxUnconsumed, final int dyUnconsumed)
+	{
+		// The target has scrolled its own content.
+		selfAndForwardedScrollX += dxConsumed;
+		selfAndForwardedScrollY += dyConsumed;
+		// Credit the target's container, which is not necessarily the one holding the forwarding token.
+		if(nestedTargetHolder != null) trackForwardedScroll(nestedTargetHolder, orientation == ORIENTATION_HORIZONTAL ? dxConsumed : dyConsumed);
+
+		// Whatever the target cannot consume is handled the same way as a remainder returned by a forwardee.
+		final int unconsumed = orientation == ORIENTATION_HORIZONTAL ? dxUnconsumed : dyUnconsumed;
+		final int lastScrollX = selfAndForwardedScrollX;
+		final int lastScrollY = selfAndForwardedScrollY;
+		if(unconsumed != 0)
+		{
+			// Only the target's container can hand the token over, otherwise the scroll continues in the current state.
+			if(isNestedTargetCurrent())
+			{
+				if(unconsumed > 0) passTokenToNextContainer();
+				scrollState = STATE_SCROLL_SCROLLING_SELF;
+			}
+			handleScroll(dxUnconsumed, dyUnconsumed);
+		}
+		final int selfDx = selfAndForwardedScrollX - lastScrollX;
+		final int selfDy = selfAndForwardedScrollY - lastScrollY;
+		dispatchNestedScroll(dxConsumed + selfDx, dyConsumed + selfDy, dxUnconsumed - selfDx, dyUnconsumed - selfDy, null);
+	}
+
+	@Override
+	public boolean onNestedPreFling(final View target, final float velocityX, final float velocityY)
+	{
+		if(dispatchNestedPreFling(velocityX, velocityY)) return true;
+
+		// Take over the fling so that it continues across forwardee containers, starting from the target.
+		final float velocity = orientation == ORIENTATION_HORIZONTAL ? velocityX : velocityY;
+		if(Math.abs(velocity) < minFlingVelocity) return false;
+		dispatchNestedFling(velocityX, velocityY, true);
+		fling((int) velocity);
+		return true;
+	}
+
+	@Override
+	public boolean onNestedFling(final View target, final float velocityX, final float velocityY, final boolean consumed)
+	{
+		return dispatchNestedFling(velocityX, velocityY, consumed);
+	}
+
+	@Override
+	public void onStopNestedScroll(final View target)
+	{
+		nestedScrollingParentHelper.onStopNestedScroll(target);
+		nestedTargetHolder = null;
+		stopNestedScroll();
+	}
+
+	/**
+	 * @return Whether the forwardee container of the current nested scrolling target holds the forwarding token.
+	 */
+	private boolean isNestedTargetCurrent()
+	{
+		return nestedTargetHolder != null && nestedTargetHolder.index == currentContainerHolderIndex
+				&& currentContainerHolderIndex < forwardeeContainerCount;
+	}
+
+	@Override
+	public int getNestedScrollAxes() { return nestedScrollingParentHelper.getNestedScrollAxes(); }
+
+	@Override
+	public void setNestedScrollingEnabled(final boolean enabled) { nestedScrollingChildHelper.setNestedScrollingEnabled(enabled); }
+
+	@Override
+	public boolean isNestedScrollingEnabled() { return nestedScrollingChildHelper.isNestedScrollingEnabled(); }
+
+	@Override
+	public boolean startNestedScroll(final int axes) { return nestedScrollingChildHelper.startNestedScroll(axes); }
+
+	@Override
+	public void stopNestedScroll() { nestedScrollingChildHelper.stopNestedScroll(); }
+
+	@Override
+	public boolean hasNestedScrollingParent() { return nestedScrollingChildHelper.hasNestedScrollingParent(); }
+
+	@Override
+	public boolean dispatchNestedScroll(final int dxConsumed, final int dyConsumed, final int dxUnconsumed,
+										final int dyUnconsumed, final int[] offsetInWindow)
+	{
+		return nestedScrollingChildHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, offsetInWindow);
+	}
+
+	@Override
+	public boolean dispatchNestedPreScroll(final int dx, final int dy, final int[] consumed, final int[] offsetInWindow)
+	{
+		return nestedScrollingChildHelper.dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow);
+	}
+
+	@Override
+	public boolean dispatchNestedFling(final float velocityX, final float velocityY, final boolean consumed)
+	{
+		return nestedScrollingChildHelper.dispatchNestedFling(velocityX, velocityY, consumed);
+	}
+
+	@Override
+	public boolean dispatchNestedPreFling(final float velocityX, final float velocityY)
+	{
+		return nestedScrollingChildHelper.dispatchNestedPreFling(velocityX, velocityY);
+	}
+
+	@Override
+	protected void onDetachedFromWindow()
+	{
+		super.onDetachedFromWindow();
+		nestedScrollingChildHelper.onDetachedFromWindow();
+	}
+
 	/**
 	 * This is a convenient method to clamp the velocity of a moving against a boundary.
 	 * @param boundary The boundary that the point must not pass through.
@@ -0,0 +1,144 @@
+package net.cafox.test;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import net.cafox.navigation.CachedSceneProvider;
+import net.cafox.navigation.Scene;
+import net.cafox.navigation.SceneContainer;
+
+/**
+ * Measure the time of a container layout pass, triggered by a text change in the visible scene, against the number
+ * of cached scenes, for both invisible and detached hidden scenes of {@link CachedSceneProvider}.
+ */
+public class SceneContainerBenchmarkTest extends Activity
+{
+	private final static int[] SCENE_COUNTS = {1, 2, 4, 8, 16, 32};
+
+	private final static int ROWS_PER_SCENE = 30;
+
+	private final static int ITERATION_COUNT = 200;
+
+	private final static int CONTAINER_WIDTH = 1080;
+
+	private final static int CONTAINER_HEIGHT = 1920;
+
+	private class BenchmarkScene extends LinearLayout implements Scene
+	{
+		private final int sceneId;
+
+		public BenchmarkScene(Context context, int sceneId)
+		{
+			super(context);
+			this.sceneId = sceneId;
+			setOrientation(VERTICAL);
+			setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+			for(int i = 0; i < ROWS_PER_SCENE; ++i)
+			{
+				final LinearLayout row = new LinearLayout(context);
+				for(int j = 0; j < 3; ++j)
+				{
+					final TextView text = new TextView(context);
+					text.setText("scene " + sceneId + " row " + i + " column " + j);
+					row.addView(text, new LinearLayout.LayoutParams(0, LayoutParams.WRAP_CONTENT, 1));
+				}
+				addView(row, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+			}
+		}
+
+		public TextView getFirstText() { return (TextView) ((ViewGroup) getChildAt(0)).getChildAt(0); }
+
+		@NonNull
+		@Override
+		public View getView()
+		{
+			return this;
+		}
+
+		@Override
+		public int getSceneId()
+		{
+			return sceneId;
+		}
+
+		@Override
+		public void onHide()
+		{
+		}
+
+		@Override
+		public void onShow()
+		{
+		}
+
+		@Override
+		public boolean onBack()
+		{
+			return false;
+		}
+
+		@Override
+		public void onSetArgument(Object argument)
+		{
+		}
+	}
+
+	@Override
+	public void onCreate(Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+		final TextView report = new TextView(this);
+		setContentView(report, new FrameLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+		final StringBuilder builder = new StringBuilder("scenes\tinvisible (us)\tdetached (us)\n");
+		for(int sceneCount : SCENE_COUNTS)
+		{
+			builder.append(sceneCount)
+					.append('\t').append(benchmark(sceneCount, false) / 1000)
+					.append('\t').append(benchmark(sceneCount, true) / 1000)
+					.append('\n');
+		}
+		report.setText(builder);
+	}
+
+	/**
+	 * @return The average time of a container layout pass in nanoseconds.
+	 */
+	private long benchmark(int sceneCount, boolean isDetachingHiddenScenes)
+	{
+		final SceneContainer container = new SceneContainer(this);
+		final BenchmarkScene[] scenes = new BenchmarkScene[sceneCount];
+		for(int i = 0; i < sceneCount; ++i)
+		{
+			scenes[i] = new BenchmarkScene(this, i);
+		}
+		final CachedSceneProvider<BenchmarkScene> provider = new CachedSceneProvider<>(container, scenes, isDetachingHiddenScenes);
+		provider.showScene(scenes[0]);
+		layout(container);
+
+		final TextView text = scenes[0].getFirstText();
+		final long start = System.nanoTime();
+		for(int i = 0; i < ITERATION_COUNT; ++i)
+		{
+			text.setText("iteration " + i);
+			layout(container);
+		}
+		return (System.nanoTime() - start) / ITERATION_COUNT;
+	}
+
+	private static void layout(View container)
+	{
+		container.measure(MeasureSpec.makeMeasureSpec(CONTAINER_WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(CONTAINER_HEIGHT, MeasureSpec.EXACTLY));
+		container.layout(0, 0, CONTAINER_WIDTH, CONTAINER_HEIGHT);
+	}
+}
@@ -0,0 +1,90 @@
+package net.cafox.test;
+
+import android.view.View;
+import android.view.ViewGroup.LayoutParams;
+
+import net.cafox.widget.ScrollForwarderView;
+
+/**
+ * Forwardees and forwardee containers shared by the {@link ScrollForwarderView} tests, which scroll scripted content
+ * instead of real scrollable views.
+ */
+final class ScrollForwarderFixtures
+{
+	private final static int LAYOUT_DELAY_MILLIS = 100;
+
+	/**
+	 * A forwardee whose content has a fixed length and which scrolls without any view.
+	 */
+	static class ScriptedForwardee implements ScrollForwarderView.Forwardee
+	{
+		private final int viewId;
+		private final int contentLength;
+		private int scrollY;
+
+		public ScriptedForwardee(int viewId, int contentLength)
+		{
+			this.viewId = viewId;
+			this.contentLength = contentLength;
+		}
+
+		@Override
+		public int getViewId()
+		{
+			return viewId;
+		}
+
+		@Override
+		public int getScrollX()
+		{
+			return 0;
+		}
+
+		@Override
+		public int getScrollY()
+		{
+			return scrollY;
+		}
+
+		@Override
+		public int scrollHorizontally(int dx)
+		{
+			return dx;
+		}
+
+		@Override
+		public int scrollVertically(int dy)
+		{
+			final int newScrollY = Math.max(0, Math.min(contentLength, scrollY + dy));
+			final int consumed = newScrollY - scrollY;
+			scrollY = newScrollY;
+			return dy - consumed;
+		}
+	}
+
+	private ScrollForwarderFixtures() {}
+
+	/**
+	 * Add an empty forwardee container filling the given view. Its forwardee is set by the caller.
+	 * @param id The id of the container, which only has to be unique among the children of the view.
+	 * @return The container.
+	 */
+	static View addForwardeeContainer(ScrollForwarderView scrollForwarderView, int id)
+	{
+		final View container = new View(scrollForwarderView.getContext());
+		container.setId(id);
+		final ScrollForwarderView.LayoutParams lp = new ScrollForwarderView.LayoutParams(
+				new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+		lp.isForwardeeContainer = true;
+		scrollForwarderView.addView(container, lp);
+		return container;
+	}
+
+	/**
+	 * Run the given runnable once the views just added to the given view have been laid out.
+	 */
+	static void runAfterLayout(View view, Runnable runnable)
+	{
+		view.postDelayed(runnable, LAYOUT_DELAY_MILLIS);
+	}
+}
@@ -0,0 +1,75 @@
+package net.cafox.test;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import net.cafox.widget.ScrollForwarderView;
+
+/**
+ * Measure the time of a {@link ScrollForwarderView} measure pass against the number of forwardee containers, each of
+ * which is an empty view so that the cost of sorting forwardee containers dominates.
+ */
+public class ScrollForwarderViewBenchmarkTest extends Activity
+{
+	private final static int[] CONTAINER_COUNTS = {1, 10, 50, 100, 200, 500};
+
+	private final static int ITERATION_COUNT = 200;
+
+	private final static int VIEW_WIDTH = 1080;
+
+	private final static int VIEW_HEIGHT = 1920;
+
+	@Override
+	public void onCreate(Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+		final TextView report = new TextView(this);
+		setContentView(report, new FrameLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+		final StringBuilder builder = new StringBuilder("containers\tmeasure (us)\n");
+		for(int containerCount : CONTAINER_COUNTS)
+		{
+			builder.append(containerCount)
+					.append('\t').append(benchmark(containerCount) / 1000)
+					.append('\n');
+		}
+		report.setText(builder);
+	}
+
+	/**
+	 * @return The average time of a measure pass in nanoseconds.
+	 */
+	private long benchmark(int containerCount)
+	{
+		final ScrollForwarderView scrollForwarderView = new ScrollForwarderView(this);
+		for(int i = 0; i < containerCount; ++i)
+		{
+			ScrollForwarderFixtures.addForwardeeContainer(scrollForwarderView, i + 1);
+		}
+		// Register forwardees in reverse order, so that the view has to sort them.
+		for(int i = containerCount; i > 0; --i)
+		{
+			scrollForwarderView.setForwardeeInContainer(new ScrollForwarderFixtures.ScriptedForwardee(i, 0), i);
+		}
+		measure(scrollForwarderView);
+
+		final long start = System.nanoTime();
+		for(int i = 0; i < ITERATION_COUNT; ++i)
+		{
+			scrollForwarderView.requestLayout();
+			measure(scrollForwarderView);
+		}
+		return (System.nanoTime() - start) / ITERATION_COUNT;
+	}
+
+	private static void measure(View view)
+	{
+		view.measure(MeasureSpec.makeMeasureSpec(VIEW_WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, MeasureSpec.EXACTLY));
+	}
+}
@@ -0,0 +1,133 @@
+package net.cafox.test;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import net.cafox.widget.ScrollForwarderView;
+
+/**
+ * Replay synthetic drags on a {@link ScrollForwarderView} and compare how far it scrolls with the ground truth, which is
+ * the distance the finger travels beyond touch slop. Each drag moves the finger upwards by a fractional distance per
+ * sample at 120 samples per second, batched two samples per event at 60 events per second, then holds still so that
+ * releasing does not fling. The distance a drag truncating every event delta to whole pixels would scroll is shown for
+ * comparison.
+ */
+public class ScrollForwarderViewDragTest extends Activity
+{
+	private final static float[] PIXELS_PER_SAMPLE = {0.3f, 0.7f, 1.5f, 2.5f};
+
+	private final static int SAMPLE_COUNT = 240;
+
+	private final static int SAMPLES_PER_EVENT = 2;
+
+	private final static long SAMPLE_INTERVAL_MILLIS = 8;
+
+	private final static int HOLD_SAMPLE_COUNT = 24;
+
+	private final static int CONTENT_LENGTH = 1000000;
+
+	private TextView report;
+	private LinearLayout dragViews;
+
+	@Override
+	public void onCreate(Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+		final LinearLayout root = new LinearLayout(this);
+		root.setOrientation(LinearLayout.VERTICAL);
+		report = new TextView(this);
+		root.addView(report, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+		dragViews = new LinearLayout(this);
+		root.addView(dragViews, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, 0, 1));
+		setContentView(root);
+
+		final ScrollForwarderView[] scrollForwarderViews = new ScrollForwarderView[PIXELS_PER_SAMPLE.length];
+		for(int i = 0; i < scrollForwarderViews.length; ++i)
+		{
+			scrollForwarderViews[i] = createScrollForwarderView();
+			dragViews.addView(scrollForwarderViews[i], new LinearLayout.LayoutParams(0, LayoutParams.MATCH_PARENT, 1));
+		}
+
+		ScrollForwarderFixtures.runAfterLayout(dragViews, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final StringBuilder builder = new StringBuilder("px/sample\ttruth\tview\ttruncating\tresult\n");
+				for(int i = 0; i < scrollForwarderViews.length; ++i)
+				{
+					replay(scrollForwarderViews[i], PIXELS_PER_SAMPLE[i], builder);
+				}
+				report.setText(builder);
+			}
+		});
+	}
+
+	private ScrollForwarderView createScrollForwarderView()
+	{
+		final ScrollForwarderView scrollForwarderView = new ScrollForwarderView(this);
+		ScrollForwarderFixtures.addForwardeeContainer(scrollForwarderView, 1);
+		scrollForwarderView.setForwardeeInContainer(new ScrollForwarderFixtures.ScriptedForwardee(1, CONTENT_LENGTH), 1);
+		return scrollForwarderView;
+	}
+
+	private void replay(ScrollForwarderView scrollForwarderView, float pixelsPerSample, StringBuilder builder)
+	{
+		final int slop = ViewConfiguration.get(this).getScaledTouchSlop();
+		final float x = scrollForwarderView.getWidth() / 2.0f;
+		final float startY = scrollForwarderView.getHeight() - 1.0f;
+		final long downTime = SystemClock.uptimeMillis();
+		final int startScrollY = scrollForwarderView.getSelfAndForwardedScrollY();
+
+		dispatch(scrollForwarderView, MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, startY, 0));
+
+		// Simulate a view truncating the delta of every event once the finger is beyond slop.
+		int truncatingScrollY = 0;
+		boolean isTruncatingDragging = false;
+		float lastEventY = startY;
+
+		float y = startY;
+		final int totalSampleCount = SAMPLE_COUNT + HOLD_SAMPLE_COUNT;
+		for(int sample = 1; sample <= totalSampleCount; sample += SAMPLES_PER_EVENT)
+		{
+			MotionEvent e = null;
+			for(int i = 0; i < SAMPLES_PER_EVENT; ++i)
+			{
+				final long sampleTime = downTime + (sample + i) * SAMPLE_INTERVAL_MILLIS;
+				if(sample + i <= SAMPLE_COUNT) y -= pixelsPerSample;
+				if(e == null) e = MotionEvent.obtain(downTime, sampleTime, MotionEvent.ACTION_MOVE, x, y, 0);
+				else e.addBatch(sampleTime, x, y, 1.0f, 1.0f, 0);
+			}
+			dispatch(scrollForwarderView, e);
+
+			if(!isTruncatingDragging && Math.abs(y - startY) > slop) isTruncatingDragging = true;
+			if(isTruncatingDragging) truncatingScrollY -= (int) (y - lastEventY);
+			lastEventY = y;
+		}
+
+		final long upTime = downTime + (totalSampleCount + 1) * SAMPLE_INTERVAL_MILLIS;
+		dispatch(scrollForwarderView, MotionEvent.obtain(downTime, upTime, MotionEvent.ACTION_UP, x, y, 0));
+
+		final float truth = startY - y - slop;
+		final int scrolled = scrollForwarderView.getSelfAndForwardedScrollY() - startScrollY;
+		builder.append(pixelsPerSample)
+				.append('\t').append(truth)
+				.append('\t').append(scrolled)
+				.append('\t').append(truncatingScrollY)
+				.append('\t').append(Math.abs(truth - scrolled) < 1.0f ? "pass" : "FAIL")
+				.append('\n');
+	}
+
+	private static void dispatch(View view, MotionEvent e)
+	{
+		view.dispatchTouchEvent(e);
+		e.recycle();
+	}
+}
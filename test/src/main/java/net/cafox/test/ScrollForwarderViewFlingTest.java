@@ -0,0 +1,202 @@
+package net.cafox.test;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup.LayoutParams;
+import android.view.ViewTreeObserver;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import net.cafox.widget.ScrollForwarderView;
+
+/**
+ * Fling two {@link ScrollForwarderView}s side by side with the same synthetic swipe: one whose single forwardee absorbs
+ * the whole fling, and one whose fling crosses a header, two short forwardees and footers before reaching a long
+ * forwardee, passing the forwarding token on the way. Both must travel the same distance, and both must scroll by the
+ * same delta on every frame. A fling which loses velocity when the token is passed scrolls less on the frames after
+ * the pass, and a fling which drops or repeats deltas there travels a different distance.
+ */
+public class ScrollForwarderViewFlingTest extends Activity
+{
+	/**
+	 * The distance the finger moves per touch sample of each swipe. Negative values swipe downwards, which flings
+	 * backwards.
+	 */
+	private final static float[] PIXELS_PER_SAMPLE = {8.0f, 30.0f, -24.0f};
+
+	private final static int SAMPLE_COUNT = 12;
+
+	private final static long SAMPLE_INTERVAL_MILLIS = 8;
+
+	private final static int HEADER_HEIGHT = 300;
+
+	private final static int SHORT_CONTENT_LENGTH = 1500;
+
+	private final static int LONG_CONTENT_LENGTH = 1000000;
+
+	private final static int POLL_INTERVAL_MILLIS = 100;
+
+	private TextView report;
+	private LinearLayout flingViews;
+	private final StringBuilder builder = new StringBuilder("px/s\tsingle\tsegmented\tmax frame diff\tresult\n");
+	private int swipeIndex;
+	private ScrollForwarderView single;
+	private ScrollForwarderView segmented;
+	private int singleStart;
+	private int segmentedStart;
+	private int singleLast;
+	private int segmentedLast;
+	private int maxFrameDifference;
+
+	/**
+	 * Compare the deltas both views scrolled by since the last frame.
+	 */
+	private final ViewTreeObserver.OnPreDrawListener frameRecorder = new ViewTreeObserver.OnPreDrawListener()
+	{
+		@Override
+		public boolean onPreDraw()
+		{
+			final int singleScroll = single.getSelfAndForwardedScrollY();
+			final int segmentedScroll = segmented.getSelfAndForwardedScrollY();
+			maxFrameDifference = Math.max(maxFrameDifference, Math.abs((singleScroll - singleLast) - (segmentedScroll - segmentedLast)));
+			singleLast = singleScroll;
+			segmentedLast = segmentedScroll;
+			return true;
+		}
+	};
+
+	@Override
+	public void onCreate(Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+		final LinearLayout root = new LinearLayout(this);
+		root.setOrientation(LinearLayout.VERTICAL);
+		report = new TextView(this);
+		root.addView(report, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+		flingViews = new LinearLayout(this);
+		root.addView(flingViews, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, 0, 1));
+		setContentView(root);
+
+		flingViews.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				startFling();
+			}
+		});
+	}
+
+	private void startFling()
+	{
+		final float pixelsPerSample = PIXELS_PER_SAMPLE[swipeIndex];
+		flingViews.removeAllViews();
+		single = new ScrollForwarderView(this);
+		addContainer(single, 1, LONG_CONTENT_LENGTH);
+		segmented = new ScrollForwarderView(this);
+		addHeader(segmented);
+		addContainer(segmented, 1, SHORT_CONTENT_LENGTH);
+		addHeader(segmented);
+		addContainer(segmented, 2, SHORT_CONTENT_LENGTH);
+		addHeader(segmented);
+		addContainer(segmented, 3, LONG_CONTENT_LENGTH);
+		flingViews.addView(single, new LinearLayout.LayoutParams(0, LayoutParams.MATCH_PARENT, 1));
+		flingViews.addView(segmented, new LinearLayout.LayoutParams(0, LayoutParams.MATCH_PARENT, 1));
+
+		ScrollForwarderFixtures.runAfterLayout(flingViews, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(pixelsPerSample < 0)
+				{
+					// Flinging backwards starts a little into the long forwardee, flinging forwards from the top.
+					final int lastContainerStart = 3 * HEADER_HEIGHT + 2 * (SHORT_CONTENT_LENGTH + segmented.getHeight());
+					single.scrollBy(0, LONG_CONTENT_LENGTH / 2);
+					segmented.scrollBy(0, lastContainerStart + HEADER_HEIGHT);
+				}
+				singleStart = singleLast = single.getSelfAndForwardedScrollY();
+				segmentedStart = segmentedLast = segmented.getSelfAndForwardedScrollY();
+				maxFrameDifference = 0;
+				flingViews.getViewTreeObserver().addOnPreDrawListener(frameRecorder);
+				swipe(pixelsPerSample);
+				flingViews.postDelayed(pollFling, POLL_INTERVAL_MILLIS);
+			}
+		});
+	}
+
+	/**
+	 * Swipe both views with the finger moving by the given distance per sample, then lift it while it still moves.
+	 */
+	private void swipe(float pixelsPerSample)
+	{
+		final float x = single.getWidth() / 2.0f;
+		float y = pixelsPerSample > 0 ? single.getHeight() - 1.0f : 1.0f;
+		final long downTime = SystemClock.uptimeMillis();
+		dispatch(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, y, 0));
+		for(int sample = 1; sample <= SAMPLE_COUNT; ++sample)
+		{
+			y -= pixelsPerSample;
+			dispatch(MotionEvent.obtain(downTime, downTime + sample * SAMPLE_INTERVAL_MILLIS, MotionEvent.ACTION_MOVE, x, y, 0));
+		}
+		dispatch(MotionEvent.obtain(downTime, downTime + SAMPLE_COUNT * SAMPLE_INTERVAL_MILLIS, MotionEvent.ACTION_UP, x, y, 0));
+	}
+
+	private void dispatch(MotionEvent e)
+	{
+		final MotionEvent copy = MotionEvent.obtain(e);
+		single.dispatchTouchEvent(e);
+		segmented.dispatchTouchEvent(copy);
+		e.recycle();
+		copy.recycle();
+	}
+
+	private final Runnable pollFling = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			// The flings are over once neither view has scrolled since the last poll.
+			final int singleScroll = single.getSelfAndForwardedScrollY();
+			final int segmentedScroll = segmented.getSelfAndForwardedScrollY();
+			if(singleScroll != singleLast || segmentedScroll != segmentedLast || singleScroll == singleStart)
+			{
+				frameRecorder.onPreDraw();
+				flingViews.postDelayed(this, POLL_INTERVAL_MILLIS);
+				return;
+			}
+			flingViews.getViewTreeObserver().removeOnPreDrawListener(frameRecorder);
+
+			final int singleDistance = singleScroll - singleStart;
+			final int segmentedDistance = segmentedScroll - segmentedStart;
+			builder.append((int) (PIXELS_PER_SAMPLE[swipeIndex] * 1000 / SAMPLE_INTERVAL_MILLIS))
+					.append('\t').append(singleDistance)
+					.append('\t').append(segmentedDistance)
+					.append('\t').append(maxFrameDifference)
+					.append('\t').append(Math.abs(singleDistance - segmentedDistance) <= 1 && maxFrameDifference <= 1 ? "pass" : "FAIL")
+					.append('\n');
+			report.setText(builder);
+
+			if(++swipeIndex < PIXELS_PER_SAMPLE.length) startFling();
+		}
+	};
+
+	private void addHeader(ScrollForwarderView scrollForwarderView)
+	{
+		final View header = new View(this);
+		header.setBackgroundColor(Color.GRAY);
+		scrollForwarderView.addView(header, new ScrollForwarderView.LayoutParams(
+				new LayoutParams(LayoutParams.MATCH_PARENT, HEADER_HEIGHT)));
+	}
+
+	private void addContainer(ScrollForwarderView scrollForwarderView, int id, int contentLength)
+	{
+		final View container = ScrollForwarderFixtures.addForwardeeContainer(scrollForwarderView, id);
+		container.setBackgroundColor(id % 2 == 0 ? Color.LTGRAY : Color.WHITE);
+		scrollForwarderView.setForwardeeInContainer(new ScrollForwarderFixtures.ScriptedForwardee(id, contentLength), id);
+	}
+}